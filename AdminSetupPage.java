@@ -6,8 +6,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -57,13 +55,19 @@ public class AdminSetupPage {
                 return;
             }
             
-            try {
-            	// Create a new User object with admin role and register in the database
-            	User user=new User(userName, password, "admin");
-                databaseHelper.register(user);
+            // Create a new User object with admin role and register in the database. Hashing the
+            // password takes a moment, so it runs off the JavaFX thread.
+            User user = new User(userName, password, "admin");
+            setupButton.setDisable(true);
+            databaseHelper.async().register(user).whenComplete((ignored, ex) -> {
+                setupButton.setDisable(false);
+                if (ex != null) {
+                    errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                    ex.printStackTrace();
+                    return;
+                }
                 System.out.println("Administrator setup completed.");
-                
-                
+
                 // Force re-login after setup completion
                 new UserLoginPage(databaseHelper) {
                     @Override
@@ -73,11 +77,7 @@ public class AdminSetupPage {
                         loginStage.setOnHiding(event -> new WelcomeLoginPage(databaseHelper).show(primaryStage, user));
                     }
                 }.show(primaryStage);
-                
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+            });
         });
 
         VBox layout = new VBox(10, userNameField, passwordField, setupButton, errorLabel);
@@ -7,6 +7,7 @@ public class Answer {
     private String author;     // Who answered the question
     private boolean isRead;    // For tracking unread answers
     private boolean isSolution; // Flag if this answer resolves the question
+    Answers owner;              // The one store holding this answer, told when it is read
 
     public Answer(int id, int questionId, String answerText, String author) {
         this.id = id;
@@ -49,7 +50,12 @@ public class Answer {
     }
     
     public void markAsRead() {
-        this.isRead = true;
+        if (!isRead) {
+            this.isRead = true;
+            if (owner != null) {
+                owner.answerRead(this);
+            }
+        }
     }
     
     public boolean isSolution() {
@@ -1,80 +1,138 @@
 package application;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class Answers {
-    private List<Answer> answerList;
+    // Answers keyed by id, in the order they were added
+    private IntKeyedStore<Answer> answerList;
+    // The same answers grouped by question, with running unread and reviewer counts
+    private IntKeyedStore<QuestionAnswers> byQuestion;
     
     public Answers() {
-        answerList = new ArrayList<>();
+        answerList = new IntKeyedStore<>();
+        byQuestion = new IntKeyedStore<>();
     }
     
-    // Create: Add a new answer.
+    // The answers to one question, kept up to date as answers are added, read and deleted,
+    // so per-question lookups never scan the whole answer list.
+    private static class QuestionAnswers {
+        final IntKeyedStore<Answer> answers = new IntKeyedStore<>();
+        int unread;
+        // Author -> number of their answers to this question, in order of first answer
+        final Map<String, Integer> reviewers = new LinkedHashMap<>();
+    }
+    
+    // Create: Add a new answer. An answer with the same id is replaced. An answer can be in one
+    // store at a time, since it only tells that store when it is read.
     public void addAnswer(Answer answer) {
         if (answer == null) {
             throw new IllegalArgumentException("Answer cannot be null.");
         }
-        answerList.add(answer);
+        if (answer.owner != null && answer.owner != this) {
+            throw new IllegalArgumentException("The answer already belongs to another Answers store.");
+        }
+        Answer previous = answerList.put(answer.getId(), answer);
+        if (previous != null) {
+            unlink(previous);
+        }
+        QuestionAnswers bucket = byQuestion.get(answer.getQuestionId());
+        if (bucket == null) {
+            bucket = new QuestionAnswers();
+            byQuestion.put(answer.getQuestionId(), bucket);
+        }
+        bucket.answers.put(answer.getId(), answer);
+        if (!answer.isRead()) {
+            bucket.unread++;
+        }
+        bucket.reviewers.merge(answer.getAuthor(), 1, Integer::sum);
+        answer.owner = this;
+    }
+    
+    // Called by Answer.markAsRead when one of this store's answers is read for the first time.
+    void answerRead(Answer answer) {
+        QuestionAnswers bucket = byQuestion.get(answer.getQuestionId());
+        if (bucket != null && bucket.answers.get(answer.getId()) == answer) {
+            bucket.unread--;
+        }
     }
     
-    // Read: Return all answers.
+    // Takes an answer that is leaving the store out of its question's bucket and counters.
+    private void unlink(Answer answer) {
+        if (answer.owner == this) {
+            answer.owner = null;
+        }
+        QuestionAnswers bucket = byQuestion.get(answer.getQuestionId());
+        if (bucket == null || bucket.answers.remove(answer.getId()) == null) {
+            return;
+        }
+        if (!answer.isRead()) {
+            bucket.unread--;
+        }
+        bucket.reviewers.computeIfPresent(answer.getAuthor(), (author, count) -> count > 1 ? count - 1 : null);
+        if (bucket.answers.size() == 0) {
+            byQuestion.remove(answer.getQuestionId());
+        }
+    }
+    
+    // Read: Return all answers as a read-only view (not a copy) that follows later changes.
     public List<Answer> getAllAnswers() {
-        return new ArrayList<>(answerList);
+        return answerList.values();
     }
     
     // Update: Update answer text.
     public boolean updateAnswer(int id, String newAnswerText) {
-        for (Answer a : answerList) {
-            if (a.getId() == id) {
-                a.setAnswerText(newAnswerText);
-                return true;
-            }
+        Answer a = answerList.get(id);
+        if (a == null) {
+            return false;
         }
-        return false;
+        a.setAnswerText(newAnswerText);
+        return true;
     }
     
     // Delete: Remove an answer by its id.
     public boolean deleteAnswer(int id) {
-        return answerList.removeIf(a -> a.getId() == id);
+        Answer removed = answerList.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        unlink(removed);
+        return true;
     }
     
     // Search: Return a subset of answers based on a predicate.
     public List<Answer> searchAnswers(Predicate<Answer> predicate) {
-        return answerList.stream()
+        return answerList.values().stream()
                          .filter(predicate)
                          .collect(Collectors.toList());
     }
     
-    // Retrieve all answers associated with a particular question.
+    // Retrieve all answers associated with a particular question. This is a copy: answers
+    // added or deleted later do not show up in it.
     public List<Answer> getAnswersForQuestion(int questionId) {
-        return answerList.stream()
-                         .filter(a -> a.getQuestionId() == questionId)
-                         .collect(Collectors.toList());
+        QuestionAnswers bucket = byQuestion.get(questionId);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.answers.values());
     }
     
-    // Count the number of unread answers for a given question.
+    // Count the number of unread answers for a given question. This is a stored counter,
+    // so badges for a page of questions cost one lookup per question.
     public int getUnreadCountForQuestion(int questionId) {
-        return (int) answerList.stream()
-                               .filter(a -> a.getQuestionId() == questionId && !a.isRead())
-                               .count();
+        QuestionAnswers bucket = byQuestion.get(questionId);
+        return bucket == null ? 0 : bucket.unread;
     }
     
     // Retrieve an answer by its id.
     public Answer getAnswerById(int id) {
-        return answerList.stream()
-                         .filter(a -> a.getId() == id)
-                         .findFirst().orElse(null);
+        return answerList.get(id);
     }
     
     // For a given question, return a list of unique reviewers (authors of answers).
     public List<String> getReviewersForQuestion(int questionId) {
-        return answerList.stream()
-                         .filter(a -> a.getQuestionId() == questionId)
-                         .map(Answer::getAuthor)
-                         .distinct()
-                         .collect(Collectors.toList());
+        QuestionAnswers bucket = byQuestion.get(questionId);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.reviewers.keySet());
     }
 }
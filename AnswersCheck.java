@@ -0,0 +1,116 @@
+package application;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers Counter Check
+ * This mainline checks the per-question bookkeeping in Answers: the unread counter, the list of
+ * reviewers, the answers returned for a question, and that an answer lives in one store only.
+ *
+ * The counters are updated as answers are added, read, replaced and deleted instead of being
+ * counted on demand, so every one of those paths is exercised here.
+ */
+public class AnswersCheck {
+
+    /**
+     * The unread counter follows adds, reads, replacements and deletes.
+     */
+    public static void testUnreadCounter() {
+        Answers answers = new Answers();
+        Answer read = new Answer(1, 10, "Read first", "amy");
+        read.markAsRead();
+        answers.addAnswer(read);
+        answers.addAnswer(new Answer(2, 10, "Unread", "bob"));
+        answers.addAnswer(new Answer(3, 10, "Also unread", "carl"));
+        answers.addAnswer(new Answer(4, 11, "Other question", "amy"));
+        check(answers.getUnreadCountForQuestion(10) == 2, "two unread answers");
+        check(answers.getUnreadCountForQuestion(11) == 1, "one unread answer on the other question");
+
+        answers.getAnswerById(2).markAsRead();
+        answers.getAnswerById(2).markAsRead(); // Reading twice counts once
+        check(answers.getUnreadCountForQuestion(10) == 1, "read answer no longer counted");
+
+        answers.addAnswer(new Answer(3, 10, "Replaced, still unread", "carl"));
+        check(answers.getUnreadCountForQuestion(10) == 1, "replacing an answer does not count it twice");
+
+        answers.deleteAnswer(3);
+        check(answers.getUnreadCountForQuestion(10) == 0, "deleted answer no longer counted");
+        check(answers.getUnreadCountForQuestion(99) == 0, "no answers, nothing unread");
+        System.out.println("testUnreadCounter passed.");
+    }
+
+    /**
+     * Reviewers are listed once each, in order of first answer, until their last answer goes.
+     */
+    public static void testReviewers() {
+        Answers answers = new Answers();
+        answers.addAnswer(new Answer(1, 10, "First", "amy"));
+        answers.addAnswer(new Answer(2, 10, "Second", "bob"));
+        answers.addAnswer(new Answer(3, 10, "Third", "amy"));
+        check(answers.getReviewersForQuestion(10).equals(Arrays.asList("amy", "bob")), "reviewers in order");
+
+        answers.deleteAnswer(1);
+        check(answers.getReviewersForQuestion(10).equals(Arrays.asList("amy", "bob")), "amy still has an answer");
+        answers.deleteAnswer(3);
+        check(answers.getReviewersForQuestion(10).equals(Arrays.asList("bob")), "amy's last answer is gone");
+        answers.deleteAnswer(2);
+        check(answers.getReviewersForQuestion(10).isEmpty(), "no reviewers left");
+        System.out.println("testReviewers passed.");
+    }
+
+    /**
+     * The answers for a question are a copy; asking again after a change shows the change,
+     * including after the question's last answer was deleted.
+     */
+    public static void testAnswersForQuestion() {
+        Answers answers = new Answers();
+        answers.addAnswer(new Answer(1, 10, "Only answer", "amy"));
+        List<Answer> before = answers.getAnswersForQuestion(10);
+        answers.deleteAnswer(1);
+        answers.addAnswer(new Answer(2, 10, "New answer", "bob"));
+        check(before.size() == 1 && before.get(0).getId() == 1, "earlier copy unchanged");
+        List<Answer> after = answers.getAnswersForQuestion(10);
+        check(after.size() == 1 && after.get(0).getId() == 2, "new answer returned");
+        check(answers.getAnswersForQuestion(99).isEmpty(), "no answers for an unknown question");
+        System.out.println("testAnswersForQuestion passed.");
+    }
+
+    /**
+     * An answer in one store is refused by another until it has been deleted from the first.
+     */
+    public static void testOneStorePerAnswer() {
+        Answers first = new Answers();
+        Answers second = new Answers();
+        Answer answer = new Answer(1, 10, "Shared?", "amy");
+        first.addAnswer(answer);
+        try {
+            second.addAnswer(answer);
+            throw new AssertionError("Expected the second store to refuse the answer.");
+        } catch (IllegalArgumentException e) {
+            check(e.getMessage().contains("another Answers store"), "refused with a clear message");
+        }
+        first.deleteAnswer(1);
+        second.addAnswer(answer);
+        answer.markAsRead();
+        check(second.getUnreadCountForQuestion(10) == 0, "the new store is told about the read");
+        System.out.println("testOneStorePerAnswer passed.");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed: " + what);
+        }
+    }
+
+    /**
+     * Mainline to run all checks.
+     */
+    public static void main(String[] args) {
+        testUnreadCounter();
+        testReviewers();
+        testAnswersForQuestion();
+        testOneStorePerAnswer();
+        System.out.println("All Answers checks completed.");
+    }
+}
@@ -0,0 +1,291 @@
+package databasePart1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import application.Answer;
+import application.Question;
+import application.User;
+import javafx.application.Platform;
+
+
+/**
+ * The AsyncDatabaseHelper class runs DatabaseHelper calls off the JavaFX Application Thread.
+ * Every call returns a CompletableFuture right away; the work runs on a worker thread and the
+ * future is completed on the callback executor (the JavaFX thread for the UI), so handlers
+ * attached with thenAccept or whenComplete can update controls directly.
+ *
+ * Workers are virtual threads when the JVM has them (Java 21 and later) and a small pool of
+ * daemon threads otherwise. The pool is sized to the connection pool, since more workers than
+ * connections would only wait for a connection.
+ *
+ * Reads take a key. While a read with the same key is still running, further calls share its
+ * result instead of querying again, so a user clicking the same button repeatedly costs one
+ * query. Cancelling a future stops waiting for it, and the query itself is interrupted once
+ * every caller sharing it has cancelled.
+ */
+public class AsyncDatabaseHelper {
+
+	// Completes futures on the JavaFX Application Thread
+	public static final Executor FX_THREAD = Platform::runLater;
+
+	private final DatabaseHelper databaseHelper;
+	private final Executor callbackExecutor;
+	private final ExecutorService workers;
+	private final ConcurrentHashMap<String, Call<?>> inFlight = new ConcurrentHashMap<>();
+
+	public AsyncDatabaseHelper(DatabaseHelper databaseHelper, Executor callbackExecutor) {
+		this.databaseHelper = databaseHelper;
+		this.callbackExecutor = callbackExecutor;
+		this.workers = newWorkerExecutor();
+	}
+
+	// Uses virtual threads when the running JVM supports them, looked up by reflection so the
+	// code still builds and runs on Java 17.
+	private static ExecutorService newWorkerExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(DatabaseHelper.POOL_SIZE, DatabaseHelper.POOL_SIZE,
+					30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+						Thread thread = new Thread(task, "db-worker-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+	}
+
+	/**
+	 * A DatabaseHelper operation to run on a worker thread.
+	 */
+	public interface Operation<T> {
+		T run(DatabaseHelper databaseHelper) throws Exception;
+	}
+
+	/**
+	 * Runs a read. Calls made with the same key while it is running share its result.
+	 */
+	public <T> CompletableFuture<T> query(String key, Operation<T> operation) {
+		while (true) {
+			@SuppressWarnings("unchecked")
+			Call<T> call = (Call<T>) inFlight.computeIfAbsent(key, k -> start(k, operation));
+			CompletableFuture<T> handle = call.join();
+			if (handle != null) {
+				return handle;
+			}
+			inFlight.remove(key, call); // Every caller cancelled it just now; start a new one
+		}
+	}
+
+	/**
+	 * Runs a write, or any call that must not be shared with other callers.
+	 */
+	public <T> CompletableFuture<T> execute(Operation<T> operation) {
+		return start(null, operation).join();
+	}
+
+	private <T> Call<T> start(String key, Operation<T> operation) {
+		Call<T> call = new Call<>(key);
+		call.task = workers.submit((Callable<Void>) () -> {
+			T value;
+			try {
+				value = operation.run(databaseHelper);
+			} catch (Throwable t) {
+				call.finish(null, t);
+				return null;
+			}
+			call.finish(value, null);
+			return null;
+		});
+		return call;
+	}
+
+	// Typed shortcuts for the calls the pages make
+
+	// Checks a user's password; a successful result carries their role.
+	public CompletableFuture<LoginResult> login(String userName, String password) {
+		return execute(db -> db.verifyCredentials(userName, password));
+	}
+
+	// Registers a user. Hashing the password takes a while, so this must never run on the JavaFX thread.
+	public CompletableFuture<Void> register(User user) {
+		return execute(db -> {
+			db.register(user);
+			return null;
+		});
+	}
+
+	// Stores a new password for a user and clears their OTP, as a password reset does.
+	public CompletableFuture<Void> resetPassword(String userName, String newPassword) {
+		return execute(db -> {
+			db.updatePassword(userName, newPassword);
+			db.clearOTP(userName);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Page<Question>> getQuestionsPage(PageCursor cursor, int pageSize) {
+		return query("questionsPage:" + cursor + ":" + pageSize, db -> db.getQuestionsPage(cursor, pageSize));
+	}
+
+	public CompletableFuture<Page<Answer>> getAnswersPage(PageCursor cursor, int pageSize) {
+		return query("answersPage:" + cursor + ":" + pageSize, db -> db.getAnswersPage(cursor, pageSize));
+	}
+
+	public CompletableFuture<Page<Question>> getUnansweredQuestionsPage(PageCursor cursor, int pageSize) {
+		return query("unansweredPage:" + cursor + ":" + pageSize,
+				db -> db.getUnansweredQuestionsPage(cursor, pageSize));
+	}
+
+	public CompletableFuture<List<Question>> getQuestionsByUser(String userName) {
+		return query("questionsBy:" + userName, db -> db.getQuestionsByUser(userName));
+	}
+
+	public CompletableFuture<List<Answer>> getAnswersByUser(String userName) {
+		return query("answersBy:" + userName, db -> db.getAnswersByUser(userName));
+	}
+
+	public CompletableFuture<List<User>> getAllUsernamesAndRoles() {
+		return query("allUsers", DatabaseHelper::getAllUsernamesAndRoles);
+	}
+
+	public CompletableFuture<Void> updateQuestion(int id, String newText) {
+		return execute(db -> {
+			db.updateQuestion(id, newText);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> updateAnswer(int id, String newText) {
+		return execute(db -> {
+			db.updateAnswer(id, newText);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Boolean> deleteUser(String userName) {
+		return execute(db -> db.deleteUser(userName));
+	}
+
+	/**
+	 * Returns the underlying error of a failed future: the SQLException or other exception the
+	 * operation threw, rather than the CompletionException wrapped around it.
+	 */
+	public static Throwable unwrap(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	// True when a future failed only because it was cancelled.
+	public static boolean isCancelled(Throwable error) {
+		return unwrap(error) instanceof CancellationException;
+	}
+
+	// Stops the worker threads. Running calls are interrupted.
+	public void shutdown() {
+		workers.shutdownNow();
+		inFlight.clear();
+	}
+
+
+	/**
+	 * One running operation and the callers waiting for it. Each caller gets its own future, so
+	 * cancelling one does not cancel the others.
+	 */
+	private class Call<T> {
+		private final String key;
+		private volatile Future<?> task;
+		private int waiters;         // Callers that have not cancelled, or -1 once stopped; guarded by this
+		private boolean finished;    // Guarded by this
+		private T value;
+		private Throwable error;
+		private final List<CompletableFuture<T>> handles = new ArrayList<>();
+
+		Call(String key) {
+			this.key = key;
+		}
+
+		// Adds a caller, or returns null if the call has been stopped.
+		synchronized CompletableFuture<T> join() {
+			if (waiters < 0) {
+				return null;
+			}
+			waiters++;
+			CompletableFuture<T> handle = new CompletableFuture<T>() {
+				@Override
+				public boolean cancel(boolean mayInterruptIfRunning) {
+					boolean cancelled = super.cancel(mayInterruptIfRunning);
+					if (cancelled) {
+						leave();
+					}
+					return cancelled;
+				}
+			};
+			if (finished) {
+				// Joined in the moment between finishing and leaving the in-flight map
+				callbackExecutor.execute(() -> deliver(handle));
+			} else {
+				handles.add(handle);
+			}
+			return handle;
+		}
+
+		private void leave() {
+			synchronized (this) {
+				if (--waiters > 0 || finished) {
+					return;
+				}
+				waiters = -1;
+			}
+			if (key != null) {
+				inFlight.remove(key, this);
+			}
+			Future<?> running = task;
+			if (running != null) {
+				running.cancel(true);
+			}
+		}
+
+		// Called on the worker thread with the outcome; hands it to the callback executor.
+		void finish(T result, Throwable failure) {
+			List<CompletableFuture<T>> waiting;
+			synchronized (this) {
+				finished = true;
+				value = result;
+				error = failure;
+				waiting = new ArrayList<>(handles);
+				handles.clear();
+			}
+			if (key != null) {
+				inFlight.remove(key, this);
+			}
+			callbackExecutor.execute(() -> waiting.forEach(this::deliver));
+		}
+
+		private void deliver(CompletableFuture<T> handle) {
+			if (error == null) {
+				handle.complete(value);
+			} else {
+				handle.completeExceptionally(error);
+			}
+		}
+	}
+}
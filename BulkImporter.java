@@ -0,0 +1,501 @@
+package databasePart1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import application.Answer;
+import application.Question;
+
+
+/**
+ * The BulkImporter class loads questions and answers in bulk from a CSV or JSON-lines file.
+ * Records are read one at a time, checked with the same rules the Question and Answer
+ * constructors apply, and written through DatabaseHelper.insertBatch in chunks of a
+ * configurable size, so each chunk is one transaction and one JDBC batch per table.
+ *
+ * Every record has the fields type ("question" or "answer"), id, question_id, author and text.
+ * A CSV file starts with a header row naming these columns; a JSON-lines file has one flat
+ * object per line. An id of 0 or an empty id lets the database generate one. Questions must
+ * come before the answers that refer to them.
+ *
+ * If a chunk fails, it is retried one row at a time so that only the bad rows are rejected.
+ */
+public class BulkImporter {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final int MAX_REPORTED_ERRORS = 20;
+
+	private final DatabaseHelper databaseHelper;
+	private final int batchSize;
+
+	public BulkImporter(DatabaseHelper databaseHelper) {
+		this(databaseHelper, DEFAULT_BATCH_SIZE);
+	}
+
+	public BulkImporter(DatabaseHelper databaseHelper, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1.");
+		}
+		this.databaseHelper = databaseHelper;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Imports a file, choosing the format from its extension (.csv, otherwise JSON lines).
+	 */
+	public ImportReport importFile(Path file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+				return importCsv(reader);
+			}
+			return importJsonLines(reader);
+		}
+	}
+
+	public ImportReport importCsv(Reader reader) throws IOException {
+		return run(new CsvSource(reader));
+	}
+
+	public ImportReport importJsonLines(Reader reader) throws IOException {
+		return run(new JsonLinesSource(reader));
+	}
+
+	// Reads every record, validating and writing them chunk by chunk.
+	private ImportReport run(RecordSource source) throws IOException {
+		ImportReport report = new ImportReport();
+		long start = System.nanoTime();
+		List<Row> chunk = new ArrayList<>(batchSize);
+
+		while (true) {
+			Map<String, String> record;
+			try {
+				record = source.next();
+			} catch (IllegalArgumentException e) {
+				report.read++;
+				report.reject(source.line(), e.getMessage()); // A malformed line; skip it
+				continue;
+			}
+			if (record == null) {
+				break;
+			}
+			report.read++;
+			try {
+				chunk.add(toRow(source.line(), record));
+			} catch (IllegalArgumentException e) {
+				report.reject(source.line(), e.getMessage());
+				continue;
+			}
+			if (chunk.size() >= batchSize) {
+				write(chunk, report);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			write(chunk, report);
+		}
+
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	// Turns a record into a Question or Answer, or throws IllegalArgumentException.
+	private static Row toRow(long line, Map<String, String> record) {
+		String type = value(record, "type").toLowerCase();
+		int id = number(record, "id");
+		String author = value(record, "author");
+		String text = record.get("text");
+
+		if (type.equals("question")) {
+			if (author.isEmpty()) {
+				throw new IllegalArgumentException("Author name cannot be empty.");
+			}
+			return new Row(line, new Question(id, text, author), null);
+		}
+		if (type.equals("answer")) {
+			int questionId = number(record, "question_id");
+			if (questionId <= 0) {
+				throw new IllegalArgumentException("An answer needs a question_id.");
+			}
+			return new Row(line, null, new Answer(id, questionId, text, author));
+		}
+		throw new IllegalArgumentException("Unknown record type: '" + type + "'");
+	}
+
+	private static String value(Map<String, String> record, String field) {
+		String value = record.get(field);
+		return value == null ? "" : value.trim();
+	}
+
+	private static int number(Map<String, String> record, String field) {
+		String value = value(record, field);
+		if (value.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Field " + field + " is not a number: '" + value + "'");
+		}
+	}
+
+	// Writes one chunk in a single transaction, falling back to one row at a time on failure.
+	private void write(List<Row> chunk, ImportReport report) {
+		List<Question> questions = new ArrayList<>();
+		List<Answer> answers = new ArrayList<>();
+		for (Row row : chunk) {
+			if (row.question != null) {
+				questions.add(row.question);
+			} else {
+				answers.add(row.answer);
+			}
+		}
+		try {
+			databaseHelper.insertBatch(questions, answers);
+			report.questions += questions.size();
+			report.answers += answers.size();
+			return;
+		} catch (SQLException e) {
+			// Fall through and find the rows that caused it
+		}
+
+		for (Row row : chunk) {
+			try {
+				if (row.question != null) {
+					databaseHelper.insertBatch(Collections.singletonList(row.question), Collections.emptyList());
+					report.questions++;
+				} else {
+					databaseHelper.insertBatch(Collections.emptyList(), Collections.singletonList(row.answer));
+					report.answers++;
+				}
+			} catch (SQLException e) {
+				report.reject(row.line, e.getMessage());
+			}
+		}
+	}
+
+
+	/**
+	 * The outcome of an import: how many rows were read, written and rejected, the first few
+	 * errors, and the throughput.
+	 */
+	public static class ImportReport {
+		private long read;
+		private long questions;
+		private long answers;
+		private long rejected;
+		private long elapsedNanos;
+		private final List<String> errors = new ArrayList<>();
+
+		private void reject(long line, String message) {
+			rejected++;
+			if (errors.size() < MAX_REPORTED_ERRORS) {
+				errors.add("Line " + line + ": " + message);
+			}
+		}
+
+		public long getRowsRead() { return read; }
+		public long getQuestionsImported() { return questions; }
+		public long getAnswersImported() { return answers; }
+		public long getRowsRejected() { return rejected; }
+		public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+		public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0 : (questions + answers) * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("Read %d rows in %d ms: %d questions, %d answers, %d rejected (%.0f rows/s)",
+					read, getElapsedMillis(), questions, answers, rejected, getRowsPerSecond()));
+			for (String error : errors) {
+				sb.append(System.lineSeparator()).append("  ").append(error);
+			}
+			if (rejected > errors.size()) {
+				sb.append(System.lineSeparator()).append("  ... ").append(rejected - errors.size()).append(" more");
+			}
+			return sb.toString();
+		}
+	}
+
+	// A validated record waiting to be written, with the line it started on.
+	private static class Row {
+		final long line;
+		final Question question;
+		final Answer answer;
+
+		Row(long line, Question question, Answer answer) {
+			this.line = line;
+			this.question = question;
+			this.answer = answer;
+		}
+	}
+
+	// Produces records as field-name to value maps, or null at the end of the input.
+	private interface RecordSource {
+		Map<String, String> next() throws IOException;
+
+		long line(); // The line the last record started on
+	}
+
+	/**
+	 * Reads RFC 4180 style CSV: fields may be quoted, quoted fields may contain commas,
+	 * newlines and doubled quotes. The first record is the header.
+	 */
+	private static class CsvSource implements RecordSource {
+		private final Reader reader;
+		private String[] header;
+		private long line = 1;
+		private long recordLine;
+		private int pending = -2; // A character read ahead, or -2 for none
+
+		CsvSource(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public Map<String, String> next() throws IOException {
+			if (header == null) {
+				List<String> names = readRecord();
+				if (names == null) {
+					return null;
+				}
+				header = new String[names.size()];
+				for (int i = 0; i < header.length; i++) {
+					header[i] = names.get(i).trim().toLowerCase();
+				}
+			}
+			List<String> fields;
+			do {
+				fields = readRecord();
+			} while (fields != null && fields.size() == 1 && fields.get(0).isEmpty()); // Blank lines
+			if (fields == null) {
+				return null;
+			}
+			Map<String, String> record = new HashMap<>();
+			for (int i = 0; i < header.length && i < fields.size(); i++) {
+				record.put(header[i], fields.get(i));
+			}
+			return record;
+		}
+
+		@Override
+		public long line() {
+			return recordLine;
+		}
+
+		private int read() throws IOException {
+			if (pending != -2) {
+				int c = pending;
+				pending = -2;
+				return c;
+			}
+			return reader.read();
+		}
+
+		private List<String> readRecord() throws IOException {
+			int c = read();
+			if (c == -1) {
+				return null;
+			}
+			recordLine = line;
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			while (true) {
+				if (quoted) {
+					if (c == -1) {
+						throw new IOException("Unterminated quoted field starting on line " + recordLine);
+					}
+					if (c == '"') {
+						int after = read();
+						if (after == '"') {
+							field.append('"');
+						} else {
+							quoted = false;
+							pending = after;
+						}
+					} else {
+						if (c == '\n') {
+							line++;
+						}
+						field.append((char) c);
+					}
+				} else if (c == -1 || c == '\n') {
+					line++;
+					fields.add(field.toString());
+					return fields;
+				} else if (c == '\r') {
+					// Dropped; the \n that follows ends the record
+				} else if (c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else if (c == '"' && field.length() == 0) {
+					quoted = true;
+				} else {
+					field.append((char) c);
+				}
+				c = read();
+			}
+		}
+	}
+
+	/**
+	 * Reads one flat JSON object per line. Values may be strings, numbers, booleans or null;
+	 * nested objects and arrays are not supported. A malformed line is reported with an
+	 * IllegalArgumentException and reading carries on with the next line.
+	 */
+	private static class JsonLinesSource implements RecordSource {
+		private final BufferedReader reader;
+		private long line;
+		private String text;
+		private int pos;
+
+		JsonLinesSource(Reader reader) {
+			this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		}
+
+		@Override
+		public Map<String, String> next() throws IOException {
+			while ((text = reader.readLine()) != null) {
+				line++;
+				if (!text.trim().isEmpty()) {
+					pos = 0;
+					return parseObject();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public long line() {
+			return line;
+		}
+
+		private Map<String, String> parseObject() {
+			Map<String, String> record = new HashMap<>();
+			expect('{');
+			if (peek() == '}') {
+				pos++;
+				return record;
+			}
+			while (true) {
+				String name = parseString();
+				expect(':');
+				record.put(name.toLowerCase(), parseValue());
+				char c = peek();
+				pos++;
+				if (c == '}') {
+					return record;
+				}
+				if (c != ',') {
+					throw error("Expected ',' or '}'");
+				}
+			}
+		}
+
+		private String parseValue() {
+			char c = peek();
+			if (c == '"') {
+				return parseString();
+			}
+			int start = pos;
+			while (pos < text.length() && ",} \t".indexOf(text.charAt(pos)) < 0) {
+				pos++;
+			}
+			String literal = text.substring(start, pos);
+			if (literal.isEmpty() || c == '{' || c == '[') {
+				throw error("Unsupported value");
+			}
+			return literal.equals("null") ? null : literal;
+		}
+
+		private String parseString() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while (pos < text.length()) {
+				char c = text.charAt(pos++);
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				if (pos >= text.length()) {
+					break;
+				}
+				char escape = text.charAt(pos++);
+				switch (escape) {
+					case 'n': sb.append('\n'); break;
+					case 't': sb.append('\t'); break;
+					case 'r': sb.append('\r'); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'u':
+						if (pos + 4 > text.length()) {
+							throw error("Bad unicode escape");
+						}
+						sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default: sb.append(escape); // \" \\ \/
+				}
+			}
+			throw error("Unterminated string");
+		}
+
+		private char peek() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+			if (pos >= text.length()) {
+				throw error("Unexpected end of line");
+			}
+			return text.charAt(pos);
+		}
+
+		private void expect(char expected) {
+			if (peek() != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+			pos++;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at column " + (pos + 1));
+		}
+	}
+
+
+	/**
+	 * Command line entry point: BulkImporter <file> [batchSize]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: BulkImporter <file.csv|file.jsonl> [batchSize]");
+			return;
+		}
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+		DatabaseHelper databaseHelper = new DatabaseHelper();
+		databaseHelper.connectToDatabase();
+		try {
+			ImportReport report = new BulkImporter(databaseHelper, batchSize).importFile(Paths.get(args[0]));
+			System.out.println(report);
+		} finally {
+			databaseHelper.closeConnection();
+		}
+	}
+}
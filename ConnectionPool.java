@@ -0,0 +1,595 @@
+package databasePart1;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The ConnectionPool class keeps a bounded set of JDBC connections open so that several callers
+ * can run queries at the same time without opening a new connection for every operation.
+ * A borrowed connection goes back to the pool when close() is called on it, so callers can keep
+ * using try-with-resources exactly as they would with a plain connection.
+ *
+ * Each physical connection also keeps an LRU cache of its prepared statements. Preparing the
+ * same SQL again on that connection returns the cached statement, so the hot queries skip
+ * parsing and planning once the pool is warm.
+ *
+ * A pool can be given a Failover for a database that may move, such as one on an H2 server that
+ * another application instance started. When a new connection cannot reach the database, the
+ * failover finds it again, and connections to the old location are dropped as they come back.
+ */
+public class ConnectionPool {
+
+	// H2's error code for a connection whose server has gone away
+	static final int CONNECTION_BROKEN = 90067;
+
+	private volatile String url;
+	private final String user;
+	private final String password;
+
+	private final int maxSize;                 // Upper bound on open connections
+	private final long idleTimeoutMillis;      // Idle connections older than this are closed
+	private final long maxLifetimeMillis;      // Connections older than this are retired
+	private final long borrowTimeoutMillis;    // How long getConnection() waits for a free slot
+	private final int statementCacheSize;      // Prepared statements cached per connection (0 = off)
+
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idle = new ArrayDeque<>(); // Guarded by itself
+	private volatile boolean closed = false;
+
+	private volatile Failover failover = null;
+	// Bumped under failoverLock on every failover; connections opened before it are dropped
+	private volatile int generation = 0;
+	private final Object failoverLock = new Object();
+
+	// Pool statistics
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong destroyed = new AtomicLong();
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+	private final AtomicLong statementEvictions = new AtomicLong();
+
+	public ConnectionPool(String url, String user, String password, int maxSize,
+			long idleTimeoutMillis, long maxLifetimeMillis, long borrowTimeoutMillis, int statementCacheSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Pool size must be positive.");
+		}
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.maxLifetimeMillis = maxLifetimeMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if no idle connection is available.
+	 * Blocks for at most the borrow timeout when every connection is in use.
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("The connection pool has been closed.");
+		}
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+						+ " ms waiting for a database connection.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection.", e);
+		}
+		totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+		try {
+			PooledConnection pooled = takeIdle();
+			if (pooled == null) {
+				pooled = open();
+			}
+			active.incrementAndGet();
+			borrowed.incrementAndGet();
+			return pooled.lease();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// Takes the most recently used idle connection, discarding any that have expired.
+	private PooledConnection takeIdle() {
+		long now = System.currentTimeMillis();
+		while (true) {
+			PooledConnection pooled;
+			synchronized (idle) {
+				pooled = idle.pollFirst();
+			}
+			if (pooled == null) {
+				return null;
+			}
+			if (pooled.isExpired(now) || pooled.isBroken() || pooled.generation != generation) {
+				evicted.incrementAndGet();
+				destroy(pooled);
+				continue;
+			}
+			return pooled;
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		int openedGeneration = generation;
+		try {
+			return connect(openedGeneration);
+		} catch (SQLException e) {
+			Failover current = failover;
+			if (current == null || !isConnectionFailure(e)) {
+				throw e;
+			}
+			synchronized (failoverLock) {
+				if (generation == openedGeneration) { // Not already moved by another borrower
+					url = current.reconnect();
+					generation++;
+				}
+			}
+			return connect(generation);
+		}
+	}
+
+	private PooledConnection connect(int connectionGeneration) throws SQLException {
+		Connection physical = DriverManager.getConnection(url, user, password);
+		created.incrementAndGet();
+		return new PooledConnection(physical, connectionGeneration);
+	}
+
+	// True when the database did not answer at all, as opposed to refusing a statement.
+	static boolean isConnectionFailure(SQLException e) {
+		String state = e.getSQLState();
+		return e.getErrorCode() == CONNECTION_BROKEN || (state != null && state.startsWith("08"));
+	}
+
+	// Closes every idle connection, when one that reaches the same database was found broken.
+	private void discardIdle() {
+		synchronized (idle) {
+			for (PooledConnection pooled : idle) {
+				evicted.incrementAndGet();
+				destroy(pooled);
+			}
+			idle.clear();
+		}
+	}
+
+	// Called when a borrower closes its leased connection.
+	private void release(PooledConnection pooled) {
+		active.decrementAndGet();
+		try {
+			if (!pooled.physical.getAutoCommit()) {
+				// Never hand a half-finished transaction to the next borrower
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			pooled.broken = true;
+		}
+		pooled.reclaimStatements();
+		if (pooled.isGone()) {
+			pooled.broken = true;
+			if (pooled.generation == generation) {
+				discardIdle(); // The database likely went away for those too, so the next borrow opens a new one
+			}
+		}
+
+		pooled.lastUsed = System.currentTimeMillis();
+		if (closed || pooled.broken || pooled.isExpired(pooled.lastUsed) || pooled.generation != generation) {
+			destroy(pooled);
+		} else {
+			synchronized (idle) {
+				idle.addFirst(pooled);
+			}
+		}
+		permits.release();
+	}
+
+	/**
+	 * Closes idle connections that have been unused longer than the idle timeout or have
+	 * outlived the maximum lifetime. Returns the number of connections closed.
+	 */
+	public int evictIdle() {
+		long now = System.currentTimeMillis();
+		int count = 0;
+		synchronized (idle) {
+			Iterator<PooledConnection> it = idle.descendingIterator(); // Oldest first
+			while (it.hasNext()) {
+				PooledConnection pooled = it.next();
+				if (pooled.isExpired(now)) {
+					it.remove();
+					destroy(pooled);
+					count++;
+				}
+			}
+		}
+		evicted.addAndGet(count);
+		return count;
+	}
+
+	private void destroy(PooledConnection pooled) {
+		destroyed.incrementAndGet();
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			if (!isConnectionFailure(e)) { // Nothing to report when the database is already gone
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Closes every idle connection. Connections still on loan are closed when they are returned.
+	public void close() {
+		closed = true;
+		synchronized (idle) {
+			for (PooledConnection pooled : idle) {
+				destroy(pooled);
+			}
+			idle.clear();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	// Sets how to find the database again when it stops answering at the pool's URL.
+	public void setFailover(Failover failover) {
+		this.failover = failover;
+	}
+
+	public PoolStats getStats() {
+		int idleCount;
+		synchronized (idle) {
+			idleCount = idle.size();
+		}
+		long borrows = borrowed.get();
+		return new PoolStats(maxSize, active.get(), idleCount, permits.getQueueLength(),
+				created.get(), destroyed.get(), borrows, timeouts.get(), evicted.get(),
+				borrows == 0 ? 0 : totalWaitNanos.get() / borrows / 1000,
+				statementHits.get(), statementMisses.get(), statementEvictions.get());
+	}
+
+
+	/**
+	 * Finds the database again after it stopped answering at the pool's URL, and returns the URL
+	 * to open connections on from then on. Runs on the borrowing thread, one failover at a time.
+	 */
+	public interface Failover {
+		String reconnect() throws SQLException;
+	}
+
+
+	/**
+	 * A physical connection together with the bookkeeping the pool needs for eviction.
+	 */
+	private class PooledConnection {
+		final Connection physical;
+		final int generation;
+		final long createdAt = System.currentTimeMillis();
+		volatile long lastUsed = createdAt;
+		volatile boolean broken = false;
+
+		// SQL -> statement, least recently used first. Only touched by the current borrower.
+		final LinkedHashMap<String, CachedStatement> statements =
+				new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+						if (size() <= statementCacheSize) {
+							return false;
+						}
+						statementEvictions.incrementAndGet();
+						eldest.getValue().evict();
+						return true;
+					}
+				};
+
+		PooledConnection(Connection physical, int generation) {
+			this.physical = physical;
+			this.generation = generation;
+		}
+
+		// Takes back any cached statement the last borrower forgot to close.
+		void reclaimStatements() {
+			for (CachedStatement cached : statements.values()) {
+				cached.reclaim();
+			}
+		}
+
+		/**
+		 * Returns a cached statement for the SQL, preparing it on a miss. If the cached statement
+		 * is still open elsewhere on this lease (a nested query), a one-off statement is prepared.
+		 */
+		PreparedStatement prepare(Connection lease, String sql) throws SQLException {
+			CachedStatement cached = statements.get(sql);
+			if (cached != null && !cached.inUse) {
+				statementHits.incrementAndGet();
+				return cached.checkOut(lease);
+			}
+			statementMisses.incrementAndGet();
+			PreparedStatement physicalStatement = physical.prepareStatement(sql);
+			if (cached != null) {
+				return physicalStatement; // Not cached; closes normally
+			}
+			cached = new CachedStatement(physicalStatement);
+			statements.put(sql, cached);
+			return cached.checkOut(lease);
+		}
+
+		boolean isExpired(long now) {
+			return now - createdAt > maxLifetimeMillis || now - lastUsed > idleTimeoutMillis;
+		}
+
+		boolean isBroken() {
+			return broken || isGone();
+		}
+
+		// True once the driver has closed the connection, which H2 does when its server goes away.
+		boolean isGone() {
+			try {
+				return physical.isClosed();
+			} catch (SQLException e) {
+				return true;
+			}
+		}
+
+		// Wraps the physical connection in a proxy whose close() returns it to the pool.
+		Connection lease() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Lease(this));
+		}
+	}
+
+	/**
+	 * The handler behind each leased connection. A lease can only be returned once; using it
+	 * after close() fails the same way a closed JDBC connection would.
+	 */
+	private class Lease implements InvocationHandler {
+		private final PooledConnection pooled;
+		private boolean returned = false;
+
+		Lease(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!returned) {
+					returned = true;
+					release(pooled);
+				}
+				return null;
+			case "isClosed":
+				return returned || pooled.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + pooled.physical + "]";
+			case "prepareStatement":
+				if (!returned && statementCacheSize > 0 && args.length == 1) {
+					return pooled.prepare((Connection) proxy, (String) args[0]);
+				}
+				// Variants with result set options or generated keys are not cached
+				return invokePhysical(method, args);
+			default:
+				return invokePhysical(method, args);
+			}
+		}
+
+		// Passes a call through to the physical connection.
+		private Object invokePhysical(Method method, Object[] args) throws Throwable {
+			if (returned) {
+				throw new SQLException("This connection has already been returned to the pool.");
+			}
+			try {
+				return method.invoke(pooled.physical, args);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof SQLException) {
+					pooled.broken = pooled.physical.isClosed();
+				}
+				throw e.getCause();
+			}
+		}
+	}
+
+
+	/**
+	 * A prepared statement kept open on its connection between borrows. Each borrower gets a
+	 * proxy whose close() hands the statement back to the cache instead of closing it. A proxy
+	 * stops working once its statement has been handed back, even if the statement is later
+	 * checked out again by someone else.
+	 */
+	private static class CachedStatement {
+		private final PreparedStatement physical;
+		private boolean inUse = false;
+		private boolean evicted = false;
+		private int generation = 0;
+		private ResultSet lastResult = null;
+
+		CachedStatement(PreparedStatement physical) {
+			this.physical = physical;
+		}
+
+		PreparedStatement checkOut(Connection lease) {
+			inUse = true;
+			generation++;
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new Checkout(lease, generation));
+		}
+
+		// Takes the statement back if the last borrower forgot to close it.
+		void reclaim() {
+			if (inUse) {
+				try {
+					release();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		// Returns the statement to the cache, closing its last result like Statement.close() would.
+		// A batch queued but never executed is dropped, so the next borrower does not run it.
+		private void release() throws SQLException {
+			inUse = false;
+			if (lastResult != null) {
+				lastResult.close();
+				lastResult = null;
+			}
+			if (evicted) {
+				closePhysical();
+			} else {
+				physical.clearParameters();
+				physical.clearBatch();
+			}
+		}
+
+		// Dropped from the cache: close now, or as soon as the current borrower is done with it.
+		void evict() {
+			evicted = true;
+			if (!inUse) {
+				closePhysical();
+			}
+		}
+
+		private void closePhysical() {
+			try {
+				physical.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * The handler behind one checkout of the statement.
+		 */
+		private class Checkout implements InvocationHandler {
+			private final Connection lease;
+			private final int checkoutGeneration;
+
+			Checkout(Connection lease, int checkoutGeneration) {
+				this.lease = lease;
+				this.checkoutGeneration = checkoutGeneration;
+			}
+
+			private boolean isCurrent() {
+				return inUse && generation == checkoutGeneration;
+			}
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "close":
+					if (isCurrent()) {
+						release();
+					}
+					return null;
+				case "isClosed":
+					return !isCurrent() || physical.isClosed();
+				case "getConnection":
+					return lease;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					if (!isCurrent()) {
+						throw new SQLException("This statement has already been closed.");
+					}
+					try {
+						Object result = method.invoke(physical, args);
+						if (result instanceof ResultSet) {
+							lastResult = (ResultSet) result;
+						}
+						return result;
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * An immutable snapshot of the pool's counters.
+	 */
+	public static class PoolStats {
+		public final int maxSize;
+		public final int active;
+		public final int idle;
+		public final int waiting;
+		public final long created;
+		public final long destroyed;
+		public final long borrowed;
+		public final long timeouts;
+		public final long evicted;
+		public final long averageWaitMicros;
+		public final long statementHits;
+		public final long statementMisses;
+		public final long statementEvictions;
+
+		PoolStats(int maxSize, int active, int idle, int waiting, long created, long destroyed,
+				long borrowed, long timeouts, long evicted, long averageWaitMicros,
+				long statementHits, long statementMisses, long statementEvictions) {
+			this.maxSize = maxSize;
+			this.active = active;
+			this.idle = idle;
+			this.waiting = waiting;
+			this.created = created;
+			this.destroyed = destroyed;
+			this.borrowed = borrowed;
+			this.timeouts = timeouts;
+			this.evicted = evicted;
+			this.averageWaitMicros = averageWaitMicros;
+			this.statementHits = statementHits;
+			this.statementMisses = statementMisses;
+			this.statementEvictions = statementEvictions;
+		}
+
+		@Override
+		public String toString() {
+			return "PoolStats [max=" + maxSize + ", active=" + active + ", idle=" + idle
+					+ ", waiting=" + waiting + ", created=" + created + ", destroyed=" + destroyed
+					+ ", borrowed=" + borrowed + ", timeouts=" + timeouts + ", evicted=" + evicted
+					+ ", avgWaitMicros=" + averageWaitMicros + ", statementHits=" + statementHits
+					+ ", statementMisses=" + statementMisses + ", statementEvictions=" + statementEvictions + "]";
+		}
+	}
+}
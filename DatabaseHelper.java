@@ -1,13 +1,29 @@
 package databasePart1;
+import java.security.SecureRandom;
 import java.sql.*;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
+import application.Answer;
+import application.Question;
 import application.User;
 
 
@@ -17,178 +33,828 @@ import application.User;
  */
 public class DatabaseHelper {
 
-	// JDBC driver name and database URL 
+	// JDBC driver name. The database URL comes from the StorageProfile.
 	static final String JDBC_DRIVER = "org.h2.Driver";   
-	static final String DB_URL = "jdbc:h2:~/FoundationDatabase";  
 
 	//  Database credentials 
 	static final String USER = "sa"; 
 	static final String PASS = ""; 
 
-	private Connection connection = null;
-	private Statement statement = null; 
-	//	PreparedStatement pstmt
+	// SQL used by this class. Kept together so QueryPlanCheck can EXPLAIN every statement.
+	// cse360users
+	static final String SQL_COUNT_USERS =
+			"SELECT COUNT(*) AS count FROM cse360users";
+	static final String SQL_INSERT_USER =
+			"INSERT INTO cse360users (userName, password, role) VALUES (?, ?, ?)";
+	static final String SQL_CREDENTIALS =
+			"SELECT password, role FROM cse360users WHERE userName = ?";
+	static final String SQL_USER_ROLE =
+			"SELECT role FROM cse360users WHERE userName = ?";
+	static final String SQL_UPDATE_PASSWORD =
+			"UPDATE cse360users SET password = ? WHERE userName = ?";
+	// Replaces a password only if no one changed it since it was read
+	static final String SQL_REHASH_PASSWORD =
+			"UPDATE cse360users SET password = ? WHERE userName = ? AND password = ?";
+	static final String SQL_ALL_USERS_AND_ROLES =
+			"SELECT userName, role FROM cse360users";
+	static final String SQL_DELETE_USER =
+			"DELETE FROM cse360users WHERE userName = ?";
+	static final String SQL_UPDATE_ROLE =
+			"UPDATE cse360users SET role = ? WHERE userName = ?";
+	static final String SQL_COUNT_ADMINS =
+			"SELECT COUNT(*) FROM cse360users WHERE role = 'admin'";
+	// InvitationCodes
+	static final String SQL_INSERT_INVITATION =
+			"INSERT INTO InvitationCodes (code, deadline) VALUES (?, ?)";
+	static final String SQL_VALID_INVITATION =
+			"SELECT * FROM InvitationCodes WHERE code = ? AND isUsed = FALSE AND deadline > CURRENT_TIMESTAMP";
+	static final String SQL_MARK_INVITATION_USED =
+			"UPDATE InvitationCodes SET isUsed = TRUE WHERE code = ?";
+	static final String SQL_EXISTING_INVITATIONS =
+			"SELECT code FROM InvitationCodes WHERE code = ANY(?)";
+	// Maintenance purges: the current time, then the batch size
+	static final String SQL_PURGE_EXPIRED_INVITATIONS =
+			"DELETE FROM InvitationCodes WHERE deadline < ? FETCH FIRST ? ROWS ONLY";
+	// user_otp, written and read back by OtpStore when OTPs are persisted
+	static final String SQL_INSERT_OTP =
+			"INSERT INTO user_otp (userName, otp, isUsed, expiresAt) VALUES (?, ?, FALSE, ?)";
+	static final String SQL_DELETE_OTPS =
+			"DELETE FROM user_otp WHERE userName = ?";
+	static final String SQL_DELETE_OTP =
+			"DELETE FROM user_otp WHERE userName = ? AND otp = ?";
+	// Shared OTP stores (see OtpStore); the current time is the last parameter
+	static final String SQL_CONSUME_OTP =
+			"DELETE FROM user_otp WHERE userName = ? AND otp = ? AND expiresAt > ?";
+	static final String SQL_HAS_OTP =
+			"SELECT 1 FROM user_otp WHERE userName = ? AND expiresAt > ? FETCH FIRST 1 ROWS ONLY";
+	static final String SQL_LIVE_OTPS =
+			"SELECT userName, otp, expiresAt FROM user_otp WHERE isUsed = FALSE AND expiresAt > ?";
+	static final String SQL_PURGE_EXPIRED_OTPS =
+			"DELETE FROM user_otp WHERE expiresAt < ? FETCH FIRST ? ROWS ONLY";
+	// Invalidations shared between instances; see InvalidationBus
+	static final String SQL_INSERT_INVALIDATION =
+			"INSERT INTO cache_invalidations (entity, entityKey, origin, createdAt) VALUES (?, ?, ?, ?)";
+	static final String SQL_INVALIDATIONS_AFTER =
+			"SELECT seq, entity, entityKey, origin FROM cache_invalidations WHERE seq > ? ORDER BY seq FETCH FIRST ? ROWS ONLY";
+	static final String SQL_MAX_INVALIDATION_SEQ =
+			"SELECT MAX(seq) FROM cache_invalidations";
+	// Every instance has long since read a row this old
+	static final String SQL_PURGE_OLD_INVALIDATIONS =
+			"DELETE FROM cache_invalidations WHERE createdAt < DATEADD(MINUTE, -10, CAST(? AS TIMESTAMP)) FETCH FIRST ? ROWS ONLY";
+	// questions and answers
+	static final String SQL_ALL_QUESTIONS =
+			"SELECT id, text, createdBy FROM questions";
+	static final String SQL_ALL_ANSWERS =
+			"SELECT id, question_id, text, answeredBy FROM answers";
+	static final String SQL_UPDATE_QUESTION =
+			"UPDATE questions SET text = ? WHERE id = ?";
+	static final String SQL_UPDATE_ANSWER =
+			"UPDATE answers SET text = ? WHERE id = ?";
+	static final String SQL_QUESTIONS_BY_USER =
+			"SELECT id, text, createdBy FROM questions WHERE createdBy = ?";
+	static final String SQL_ANSWERS_BY_USER =
+			"SELECT id, question_id, text, answeredBy FROM answers WHERE answeredBy = ?";
+	// Keyset pages. The ">= ? AND (> ? OR id > ?)" form gives H2 a range to seek to in the index.
+	static final String SQL_QUESTIONS_PAGE_FIRST =
+			"SELECT id, text, createdBy, createdAt FROM questions ORDER BY createdAt, id LIMIT ?";
+	static final String SQL_QUESTIONS_PAGE_LAST =
+			"SELECT id, text, createdBy, createdAt FROM questions ORDER BY createdAt DESC, id DESC LIMIT ?";
+	static final String SQL_QUESTIONS_PAGE_AFTER =
+			"SELECT id, text, createdBy, createdAt FROM questions WHERE createdAt >= ? AND (createdAt > ? OR id > ?) "
+			+ "ORDER BY createdAt, id LIMIT ?";
+	static final String SQL_QUESTIONS_PAGE_BEFORE =
+			"SELECT id, text, createdBy, createdAt FROM questions WHERE createdAt <= ? AND (createdAt < ? OR id < ?) "
+			+ "ORDER BY createdAt DESC, id DESC LIMIT ?";
+	static final String SQL_COUNT_QUESTIONS =
+			"SELECT COUNT(*) FROM questions";
+	static final String SQL_ANSWERS_PAGE_FIRST =
+			"SELECT id, question_id, text, answeredBy, createdAt FROM answers ORDER BY createdAt, id LIMIT ?";
+	static final String SQL_ANSWERS_PAGE_LAST =
+			"SELECT id, question_id, text, answeredBy, createdAt FROM answers ORDER BY createdAt DESC, id DESC LIMIT ?";
+	static final String SQL_ANSWERS_PAGE_AFTER =
+			"SELECT id, question_id, text, answeredBy, createdAt FROM answers WHERE createdAt >= ? AND (createdAt > ? OR id > ?) "
+			+ "ORDER BY createdAt, id LIMIT ?";
+	static final String SQL_ANSWERS_PAGE_BEFORE =
+			"SELECT id, question_id, text, answeredBy, createdAt FROM answers WHERE createdAt <= ? AND (createdAt < ? OR id < ?) "
+			+ "ORDER BY createdAt DESC, id DESC LIMIT ?";
+	static final String SQL_COUNT_ANSWERS =
+			"SELECT COUNT(*) FROM answers";
+	// Questions with no answers, as an anti-join on the answers(question_id, ...) index
+	static final String SQL_UNANSWERED_PAGE_FIRST =
+			"SELECT q.id, q.text, q.createdBy, q.createdAt FROM questions q "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM answers a WHERE a.question_id = q.id) "
+			+ "ORDER BY q.createdAt, q.id LIMIT ?";
+	static final String SQL_UNANSWERED_PAGE_LAST =
+			"SELECT q.id, q.text, q.createdBy, q.createdAt FROM questions q "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM answers a WHERE a.question_id = q.id) "
+			+ "ORDER BY q.createdAt DESC, q.id DESC LIMIT ?";
+	static final String SQL_UNANSWERED_PAGE_AFTER =
+			"SELECT q.id, q.text, q.createdBy, q.createdAt FROM questions q "
+			+ "WHERE q.createdAt >= ? AND (q.createdAt > ? OR q.id > ?) "
+			+ "AND NOT EXISTS (SELECT 1 FROM answers a WHERE a.question_id = q.id) "
+			+ "ORDER BY q.createdAt, q.id LIMIT ?";
+	static final String SQL_UNANSWERED_PAGE_BEFORE =
+			"SELECT q.id, q.text, q.createdBy, q.createdAt FROM questions q "
+			+ "WHERE q.createdAt <= ? AND (q.createdAt < ? OR q.id < ?) "
+			+ "AND NOT EXISTS (SELECT 1 FROM answers a WHERE a.question_id = q.id) "
+			+ "ORDER BY q.createdAt DESC, q.id DESC LIMIT ?";
+	// Whole-table reads for exports and reindexing, in primary key order
+	static final String SQL_STREAM_QUESTIONS =
+			"SELECT id, text, createdBy FROM questions ORDER BY id";
+	static final String SQL_STREAM_ANSWERS =
+			"SELECT id, question_id, text, answeredBy FROM answers ORDER BY id";
+	// Batch inserts, with a generated id or with the id given by the caller
+	static final String SQL_INSERT_QUESTION =
+			"INSERT INTO questions (text, createdBy) VALUES (?, ?)";
+	static final String SQL_INSERT_QUESTION_WITH_ID =
+			"INSERT INTO questions (id, text, createdBy) VALUES (?, ?, ?)";
+	static final String SQL_INSERT_ANSWER =
+			"INSERT INTO answers (question_id, text, answeredBy) VALUES (?, ?, ?)";
+	static final String SQL_INSERT_ANSWER_WITH_ID =
+			"INSERT INTO answers (id, question_id, text, answeredBy) VALUES (?, ?, ?, ?)";
+	static final String SQL_MAX_QUESTION_ID =
+			"SELECT MAX(id) FROM questions";
+	static final String SQL_MAX_ANSWER_ID =
+			"SELECT MAX(id) FROM answers";
+	static final String SQL_DELETE_QUESTION =
+			"DELETE FROM questions WHERE id = ?";
+	static final String SQL_DELETE_ANSWER =
+			"DELETE FROM answers WHERE id = ?";
+	// The current text of a post, to reindex it when another instance changed it
+	static final String SQL_QUESTION_TEXT =
+			"SELECT text FROM questions WHERE id = ?";
+	// Search snippets read the current text of every hit of one kind at once: an array of ids
+	static final String SQL_QUESTION_TEXTS =
+			"SELECT id, text FROM questions WHERE id = ANY(?)";
+	static final String SQL_ANSWER_TEXTS =
+			"SELECT id, text FROM answers WHERE id = ANY(?)";
+	static final String SQL_ANSWER_QUESTION_AND_TEXT =
+			"SELECT question_id, text FROM answers WHERE id = ?";
 
-	public void connectToDatabase() throws SQLException {
+	// Rows per round trip when streaming whole tables
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
+	// Longest search snippet, in characters
+	static final int SNIPPET_LENGTH = 160;
+
+	// Page queries select the mapper's columns, id first, followed by createdAt
+	private static final PageQueries<Question> QUESTION_PAGES = new PageQueries<>(SQL_QUESTIONS_PAGE_FIRST,
+			SQL_QUESTIONS_PAGE_LAST, SQL_QUESTIONS_PAGE_AFTER, SQL_QUESTIONS_PAGE_BEFORE, SQL_COUNT_QUESTIONS,
+			RowMappers.QUESTION, 4);
+	private static final PageQueries<Answer> ANSWER_PAGES = new PageQueries<>(SQL_ANSWERS_PAGE_FIRST,
+			SQL_ANSWERS_PAGE_LAST, SQL_ANSWERS_PAGE_AFTER, SQL_ANSWERS_PAGE_BEFORE, SQL_COUNT_ANSWERS,
+			RowMappers.ANSWER, 5);
+	// Counting unanswered questions would mean running the anti-join over the whole table, so
+	// these pages report an unknown total instead.
+	private static final PageQueries<Question> UNANSWERED_PAGES = new PageQueries<>(SQL_UNANSWERED_PAGE_FIRST,
+			SQL_UNANSWERED_PAGE_LAST, SQL_UNANSWERED_PAGE_AFTER, SQL_UNANSWERED_PAGE_BEFORE, null,
+			RowMappers.QUESTION, 4);
+
+	// Pool sizing and eviction settings
+	static final int POOL_SIZE = 10;
+	static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;   // 5 minutes
+	static final long POOL_MAX_LIFETIME_MILLIS = 30 * 60 * 1000;  // 30 minutes
+	static final long POOL_BORROW_TIMEOUT_MILLIS = 5 * 1000;      // 5 seconds
+	// Prepared statements kept per pooled connection; comfortably more than the SQL_ constants
+	static final int STATEMENT_CACHE_SIZE = 64;
+
+	// User existence and role lookups; unknown names are remembered for a shorter time
+	static final int USER_CACHE_SIZE = 1000;
+	static final long USER_CACHE_TTL_MILLIS = 5 * 60 * 1000;          // 5 minutes
+	static final long USER_CACHE_NEGATIVE_TTL_MILLIS = 30 * 1000;     // 30 seconds
+
+	// PBKDF2 cost per password; override with -Dcse360.passwordIterations=N when tuning
+	static final int PASSWORD_ITERATIONS = Integer.getInteger("cse360.passwordIterations", 210_000);
+	// Password checks allowed to wait for a hashing thread before new ones are turned away
+	static final int PASSWORD_QUEUE_SIZE = 64;
+
+	// How long a password reset OTP stays valid
+	static final long OTP_TTL_MILLIS = 15 * 60 * 1000;    // 15 minutes
+	// Invitation codes leave out look-alike characters (0/O, 1/I/L) since they are typed in by hand
+	public static final String INVITATION_ALPHABET = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
+	public static final int INVITATION_CODE_LENGTH = 8;
+	static final int INVITATION_CODE_MAX_LENGTH = 10;                   // The code column's width
+	public static final int INVITATION_MAX_BATCH = 10_000;
+	public static final long INVITATION_VALIDITY_MILLIS = 2 * 60 * 1000; // 2 minutes
+
+	// Background maintenance: purge periods, and how much one purge run may delete
+	static final long PURGE_PERIOD_MILLIS = 5 * 60 * 1000;         // 5 minutes
+	static final long POOL_EVICT_PERIOD_MILLIS = 30 * 1000;        // 30 seconds
+	static final double MAINTENANCE_JITTER = 0.2;                  // Periods vary by up to 20% either way
+	static final int PURGE_BATCH_SIZE = 500;
+	static final int PURGE_MAX_BATCHES = 20;
+	static final long PURGE_PAUSE_MILLIS = 50;
+
+	// Keep OTPs in user_otp as well, so pending resets survive a restart; -Dcse360.persistOtps=false turns it off
+	static final boolean PERSIST_OTPS = Boolean.parseBoolean(System.getProperty("cse360.persistOtps", "true"));
+
+	// Every operation borrows its own connection, so callers on different threads no longer
+	// queue up behind a single shared connection.
+	private volatile ConnectionPool pool = null;
+
+	private final SecureRandom secureRandom = new SecureRandom();
+
+	private final UserCache userCache = new UserCache(USER_CACHE_SIZE, USER_CACHE_TTL_MILLIS,
+			USER_CACHE_NEGATIVE_TTL_MILLIS);
+
+	// Created on first use by async()
+	private AsyncDatabaseHelper async = null;
+
+	// Built on the first search, then kept current by the writes below
+	private volatile SearchIndex searchIndex = null;
+	// Held while the index is built, so one search builds it and the others wait for that one.
+	// Never this helper's own monitor, which the JavaFX thread takes for async() and friends.
+	private final Object searchIndexBuild = new Object();
+	// Changes made while the index is being built, replayed onto it before it is published.
+	// Non-null only during a build; guarded by indexChanges' own lock, held only briefly.
+	private final Object indexChanges = new Object();
+	private List<Consumer<SearchIndex>> changesDuringBuild = null;
+
+	// Inserts with generated ids share the read lock. An insert with explicit ids holds the write
+	// lock until the id counters have been moved past its rows, so no generated id can collide.
+	private final ReentrantReadWriteLock insertLock = new ReentrantReadWriteLock();
+
+	// Created on first use by writeBehind()
+	private WriteBehindRepository writeBehind = null;
+
+	// Created on first use by passwordHasher()
+	private PasswordHasher passwordHasher = null;
+
+	// Created by connectToDatabase(), so checking an OTP never waits on this helper's monitor
+	private volatile OtpStore otpStore = null;
+
+	// Started by connectToDatabase(), stopped by closeConnection()
+	private MaintenanceScheduler maintenance = null;
+
+	// Tells other instances on the same H2 server what changed; null unless the database is shared
+	private volatile InvalidationBus invalidations = null;
+
+	// Chosen with setStorageProfile(), or from -Dcse360.storage when connecting
+	private StorageProfile storageProfile = null;
+	// The settings H2 reported for the open database
+	private Map<String, String> storageSettings = Collections.emptyMap();
+	// The H2 server this instance started for the SERVER profile, if it did; stopped on close
+	// unless other sessions still use it. Also set when a failover starts a server here.
+	private volatile DatabaseServer startedServer = null;
+	// How the SERVER profile reached the database: attached, started here, or embedded fallback
+	private volatile String serverMode = null;
+
+	// Opens the connection pool and migrates the schema. Calling this again once connected does nothing.
+	public synchronized void connectToDatabase() throws SQLException {
+		if (pool != null && !pool.isClosed()) {
+			return;
+		}
 		try {
 			Class.forName(JDBC_DRIVER); // Load the JDBC driver
-			System.out.println("Connecting to database...");
-			connection = DriverManager.getConnection(DB_URL, USER, PASS);
-			statement = connection.createStatement(); 
-			// You can use this command to clear the database and restart from fresh.
-			//statement.execute("DROP ALL OBJECTS");
+			StorageProfile profile;
+			try {
+				profile = storageProfile != null ? storageProfile : StorageProfile.fromSystemProperty();
+			} catch (IllegalArgumentException e) {
+				throw new SQLException(e.getMessage(), e);
+			}
+			profile.validate();
+			String url = profile == StorageProfile.SERVER ? serverUrl() : profile.url();
+			System.out.println("Connecting to database (" + profile + ": " + url + ")...");
+			ConnectionPool newPool = new ConnectionPool(url, USER, PASS, POOL_SIZE,
+					POOL_IDLE_TIMEOUT_MILLIS, POOL_MAX_LIFETIME_MILLIS, POOL_BORROW_TIMEOUT_MILLIS,
+					STATEMENT_CACHE_SIZE);
+			Connection connection;
+			try {
+				connection = newPool.getConnection();
+			} catch (SQLException e) {
+				newPool.close();
+				stopStartedServer();
+				throw new SQLException("Could not open the " + profile + " database at " + url + ": " + e.getMessage(), e);
+			}
+			try {
+				// You can use this command to clear the database and restart from fresh.
+				//connection.createStatement().execute("DROP ALL OBJECTS");
+
+				// Bring the schema up to date. When it is already current this is a single lookup.
+				int version;
+				if (profile == StorageProfile.SERVER) {
+					// Other instances may be opening the same new database right now; migrate one at a time
+					try (Connection lock = newPool.getConnection()) {
+						version = new SchemaMigrator().migrate(connection, lock);
+					}
+				} else {
+					version = new SchemaMigrator().migrate(connection);
+				}
+				System.out.println("Database schema is at version " + version);
 
-			createTables();  // Create the necessary tables if they don't exist
+				storageSettings = profile.effectiveSettings(connection);
+				if (profile == StorageProfile.SERVER) {
+					storageSettings.put("SERVER_MODE", serverMode);
+				}
+				reportStorageSettings(profile);
+			} catch (SQLException e) {
+				connection.close();
+				newPool.close();
+				stopStartedServer();
+				throw e;
+			}
+			connection.close();
+			if (profile == StorageProfile.SERVER && !"embedded fallback".equals(serverMode)) {
+				newPool.setFailover(this::reconnectToServer);
+			}
+			storageProfile = profile;
+			pool = newPool;
+			// Instances sharing the database must see each other's OTPs, so those always use the table
+			otpStore = isShared() ? new OtpStore(this, OTP_TTL_MILLIS, true)
+					: new OtpStore(PERSIST_OTPS ? this : null, OTP_TTL_MILLIS);
+			startMaintenance();
 		} catch (ClassNotFoundException e) {
 			System.err.println("JDBC Driver not found: " + e.getMessage());
 		}
 	}
 
-	private void createTables() throws SQLException {
-		String userTable = "CREATE TABLE IF NOT EXISTS cse360users ("
-				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
-				+ "userName VARCHAR(255) UNIQUE, "
-				+ "password VARCHAR(255), "
-				+ "role VARCHAR(20))";
-		statement.execute(userTable);
-		
-		String dropTable = "DROP TABLE IF EXISTS InvitationCodes";
-		statement.execute(dropTable);
-		
-		// Create the invitation codes table
-		 String invitationCodesTable = "CREATE TABLE IF NOT EXISTS InvitationCodes ("
-		            + "code VARCHAR(10) PRIMARY KEY, "
-		            + "isUsed BOOLEAN DEFAULT FALSE, "
-		            + "deadline TIMESTAMP)";
-		    statement.execute(invitationCodesTable);
-		    
-		    String dropOtpTable = "DROP TABLE IF EXISTS user_otp";
-		    statement.execute(dropOtpTable);
-
-		    // Create the user_otp table with the correct schema
-		    String otpTable = "CREATE TABLE IF NOT EXISTS user_otp ("
-		            + "userName VARCHAR(255), "
-		            + "otp VARCHAR(10), "
-		            + "isUsed BOOLEAN DEFAULT FALSE)";
-		    statement.execute(otpTable);
-		    
-		    
-		 // Create tables for Questions and Answers
-	        String questionsTable = "CREATE TABLE IF NOT EXISTS questions ("
-	                + "id INT AUTO_INCREMENT PRIMARY KEY, "
-	                + "text VARCHAR(1000) NOT NULL, "
-	                + "createdBy VARCHAR(255) NOT NULL, "
-	                + "createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
-	        statement.execute(questionsTable);
-
-	        String answersTable = "CREATE TABLE IF NOT EXISTS answers ("
-	                + "id INT AUTO_INCREMENT PRIMARY KEY, "
-	                + "question_id INT, "
-	                + "answeredBy VARCHAR(255) NOT NULL, "
-	                + "text VARCHAR(1000) NOT NULL, "
-	                + "createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
-	                + "FOREIGN KEY (question_id) REFERENCES questions(id) ON DELETE CASCADE)";
-	        statement.execute(answersTable);
+	/**
+	 * Finds the database for the SERVER profile: attaches to a running server, or starts one here
+	 * when the server address is on this machine and nothing answers there. If the server cannot be
+	 * started, falls back to opening the file directly, as the EMBEDDED profile does.
+	 */
+	private String serverUrl() throws SQLException {
+		String url = StorageProfile.SERVER.url();
+		if (DatabaseServer.isReachable(url)) {
+			System.out.println("Attaching to the H2 server at " + StorageProfile.serverHost() + ":" + StorageProfile.serverPort());
+			serverMode = "attached";
+			return url;
+		}
+		if (!DatabaseServer.isLocal(StorageProfile.serverHost())) {
+			throw new SQLException("No H2 server is answering at " + StorageProfile.serverHost() + ":"
+					+ StorageProfile.serverPort() + ".");
+		}
+		try {
+			startedServer = DatabaseServer.start(System.getProperty(StorageProfile.PATH_PROPERTY, StorageProfile.DEFAULT_PATH),
+					StorageProfile.serverPort());
+			System.out.println("Started an H2 server on port " + startedServer.getPort());
+			serverMode = "started here";
+			return url;
+		} catch (SQLException e) {
+			// Another instance may have started the server in the meantime
+			if (DatabaseServer.isReachable(url)) {
+				System.out.println("Attaching to the H2 server another instance just started");
+				serverMode = "attached";
+				return url;
+			}
+			System.err.println("Could not start an H2 server (" + e.getMessage() + "). Opening the database file directly.");
+			serverMode = "embedded fallback";
+			return StorageProfile.EMBEDDED.url();
+		}
+	}
+
+	/**
+	 * Called by the pool when the H2 server stops answering, typically because the instance that
+	 * started it has exited. Finds the database the same way connecting did: attaches to a server
+	 * another instance has started meanwhile, starts one here, or opens the file directly.
+	 */
+	private String reconnectToServer() throws SQLException {
+		System.err.println("The H2 server at " + StorageProfile.serverHost() + ":" + StorageProfile.serverPort()
+				+ " stopped answering. Finding the database again.");
+		String url = serverUrl();
+		System.out.println("Reconnected to the database (" + serverMode + ": " + url + ")");
+		return url;
+	}
+
+	// Prints the settings H2 applied, and warns about any that differ from what the profile asked for.
+	private void reportStorageSettings(StorageProfile profile) {
+		System.out.println("Storage profile " + profile + " (" + profile.getDescription() + "): " + storageSettings);
+		profile.settings().forEach((name, requested) -> {
+			String effective = storageSettings.get(name);
+			if (effective != null && !effective.equals("(default)") && !effective.equals(requested)) {
+				System.err.println("Storage profile " + profile + " asked for " + name + "=" + requested
+						+ " but the database is using " + effective + ".");
+			}
+		});
+	}
+
+	/**
+	 * Chooses how the database is stored. Call this before connectToDatabase(); without it the
+	 * profile named by -Dcse360.storage is used, or EMBEDDED.
+	 */
+	public synchronized void setStorageProfile(StorageProfile profile) {
+		if (pool != null && !pool.isClosed()) {
+			throw new IllegalStateException("The storage profile cannot change while connected.");
+		}
+		storageProfile = profile;
+	}
+
+	// The profile of the open database, or the one chosen for the next connect; null if neither.
+	public synchronized StorageProfile getStorageProfile() {
+		return storageProfile;
+	}
+
+	// The settings H2 reported when the database was opened, such as CACHE_SIZE and WRITE_DELAY.
+	public synchronized Map<String, String> getStorageSettings() {
+		return Collections.unmodifiableMap(storageSettings);
+	}
+
+	// Schedules the housekeeping jobs that keep the invitation and OTP tables small.
+	private void startMaintenance() {
+		maintenance = new MaintenanceScheduler();
+		maintenance.schedule("purge-invitations", PURGE_PERIOD_MILLIS, MAINTENANCE_JITTER,
+				MaintenanceScheduler.batchedDelete(this, SQL_PURGE_EXPIRED_INVITATIONS, PURGE_BATCH_SIZE,
+						PURGE_MAX_BATCHES, PURGE_PAUSE_MILLIS));
+		maintenance.schedule("purge-otps", PURGE_PERIOD_MILLIS, MAINTENANCE_JITTER,
+				MaintenanceScheduler.batchedDelete(this, SQL_PURGE_EXPIRED_OTPS, PURGE_BATCH_SIZE,
+						PURGE_MAX_BATCHES, PURGE_PAUSE_MILLIS));
+		ConnectionPool current = pool;
+		maintenance.schedule("pool-evict-idle", POOL_EVICT_PERIOD_MILLIS, MAINTENANCE_JITTER, current::evictIdle);
+		maintenance.schedule("otp-expiry", OtpStore.TICK_MILLIS, 0, otpStore::tick);
+		if (isShared()) {
+			startInvalidations();
+		}
+	}
+
+	// True when other instances may be using the same database through an H2 server.
+	private boolean isShared() {
+		return storageProfile == StorageProfile.SERVER && !"embedded fallback".equals(serverMode);
+	}
+
+	// Joins the other instances sharing the server: publishes this one's changes and applies theirs.
+	private void startInvalidations() {
+		InvalidationBus bus;
+		try {
+			bus = new InvalidationBus(this);
+		} catch (SQLException e) {
+			e.printStackTrace(); // Caches here may go stale until their entries expire
+			return;
+		}
+		bus.addListener(this::applyInvalidation);
+		invalidations = bus;
+		maintenance.schedule("invalidations", InvalidationBus.POLL_MILLIS, 0, bus::exchange);
+		maintenance.schedule("purge-invalidations", PURGE_PERIOD_MILLIS, MAINTENANCE_JITTER,
+				MaintenanceScheduler.batchedDelete(this, SQL_PURGE_OLD_INVALIDATIONS, PURGE_BATCH_SIZE,
+						PURGE_MAX_BATCHES, PURGE_PAUSE_MILLIS));
+	}
+
+	// Queues an invalidation for the other instances; does nothing when the database is not shared.
+	void publishInvalidation(InvalidationBus.Entity entity, String key) {
+		InvalidationBus bus = invalidations;
+		if (bus != null) {
+			bus.publish(entity, key);
+		}
+	}
+
+	void publishInvalidation(InvalidationBus.Entity entity, int id) {
+		publishInvalidation(entity, Integer.toString(id));
+	}
+
+	/**
+	 * Applies a change another instance made: drops the user from the lookup cache, or re-reads
+	 * the post into the search index (removing it if it is gone). Runs on the maintenance thread.
+	 */
+	private void applyInvalidation(InvalidationBus.Entity entity, String key) {
+		if (entity == InvalidationBus.Entity.USER) {
+			userCache.invalidate(key);
+			return;
+		}
+		if (!searchIndexInUse()) {
+			return; // Built from the tables when first needed
+		}
+		try {
+			int id = Integer.parseInt(key);
+			if (entity == InvalidationBus.Entity.QUESTION) {
+				String text = queryText(SQL_QUESTION_TEXT, id);
+				updateSearchIndex(index -> {
+					if (text == null) {
+						index.removeQuestion(id);
+					} else {
+						index.update(SearchIndex.Kind.QUESTION, id, text);
+					}
+				});
+				return;
+			}
+			try (Connection connection = pool.getConnection();
+			     PreparedStatement pstmt = connection.prepareStatement(SQL_ANSWER_QUESTION_AND_TEXT)) {
+				pstmt.setInt(1, id);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (rs.next()) {
+						int questionId = rs.getInt(1);
+						String text = rs.getString(2);
+						updateSearchIndex(index -> index.addAnswer(id, questionId, text));
+					} else {
+						updateSearchIndex(index -> index.removeAnswer(id));
+					}
+				}
+			}
+		} catch (SQLException | NumberFormatException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Returns the asynchronous facade for calls made from the JavaFX Application Thread.
+	// Its futures complete on the JavaFX thread.
+	public synchronized AsyncDatabaseHelper async() {
+		if (async == null) {
+			async = new AsyncDatabaseHelper(this, AsyncDatabaseHelper.FX_THREAD);
+		}
+		return async;
+	}
+
+	// Returns the repository that saves Q&A posts in the background without blocking the caller.
+	public synchronized WriteBehindRepository writeBehind() {
+		if (writeBehind == null) {
+			writeBehind = new WriteBehindRepository(this);
+		}
+		return writeBehind;
+	}
+
+	// Returns the hasher that hashes and checks passwords on its own bounded pool of threads.
+	public synchronized PasswordHasher passwordHasher() {
+		if (passwordHasher == null) {
+			passwordHasher = new PasswordHasher(PASSWORD_ITERATIONS, Runtime.getRuntime().availableProcessors(),
+					PASSWORD_QUEUE_SIZE);
+		}
+		return passwordHasher;
+	}
 
+	// Returns the store of password reset OTPs. It is created, with any persisted OTPs, on connect.
+	public OtpStore otpStore() {
+		OtpStore store = otpStore;
+		if (store == null) {
+			throw new IllegalStateException("The database is not connected.");
+		}
+		return store;
+	}
+
+	// Borrows a pooled connection for helpers in this package that run their own transactions.
+	Connection borrowConnection() throws SQLException {
+		return pool.getConnection();
+	}
+
+	// Returns a snapshot of the user lookup cache counters.
+	public UserCache.Stats getUserCacheStats() {
+		return userCache.getStats();
+	}
+
+	// Returns a snapshot of the password hashing counters: queue depth, wait and run times.
+	public PasswordHasher.Stats getPasswordHasherStats() {
+		return passwordHasher().getStats();
+	}
+
+	// The invalidation bus, or null when the database is not shared with other instances.
+	public InvalidationBus getInvalidationBus() {
+		return invalidations;
+	}
+
+	// Returns the run counts and times of the background maintenance jobs.
+	public List<MaintenanceScheduler.JobStats> getMaintenanceStats() {
+		MaintenanceScheduler current = maintenance;
+		return current == null ? new ArrayList<>() : current.getStats();
+	}
+
+	// Returns a snapshot of the connection pool counters, or null before connecting.
+	public ConnectionPool.PoolStats getPoolStats() {
+		ConnectionPool current = pool;
+		return current == null ? null : current.getStats();
 	}
 
 
 	// Check if the database is empty
 	public boolean isDatabaseEmpty() throws SQLException {
-		String query = "SELECT COUNT(*) AS count FROM cse360users";
-		ResultSet resultSet = statement.executeQuery(query);
-		if (resultSet.next()) {
-			return resultSet.getInt("count") == 0;
+		String query = SQL_COUNT_USERS;
+		try (Connection connection = pool.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery(query)) {
+			if (resultSet.next()) {
+				return resultSet.getInt("count") == 0;
+			}
 		}
 		return true;
 	}
 
-	// Registers a new user in the database.
+	// Registers a new user in the database. Only a salted hash of the password is stored.
 	public void register(User user) throws SQLException {
-		String insertUser = "INSERT INTO cse360users (userName, password, role) VALUES (?, ?, ?)";
-		try (PreparedStatement pstmt = connection.prepareStatement(insertUser)) {
+		String insertUser = SQL_INSERT_USER;
+		String hash = await(passwordHasher().hash(user.getPassword()));
+		try (Connection connection = pool.getConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(insertUser)) {
 			pstmt.setString(1, user.getUserName());
-			pstmt.setString(2, user.getPassword());
+			pstmt.setString(2, hash);
 			pstmt.setString(3, user.getRole());
 			pstmt.executeUpdate();
 		}
+		userCache.invalidate(user.getUserName()); // It may be cached as unknown
+		publishInvalidation(InvalidationBus.Entity.USER, user.getUserName());
 	}
 
-	// Validates a user's login credentials.
+	// Validates a user's login credentials, including that they hold the given role.
 	public boolean login(User user) throws SQLException {
-		String query = "SELECT * FROM cse360users WHERE userName = ? AND password = ? AND role = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-			pstmt.setString(1, user.getUserName());
-			pstmt.setString(2, user.getPassword());
-			pstmt.setString(3, user.getRole());
+		LoginResult result = verifyCredentials(user.getUserName(), user.getPassword());
+		return result.isSuccess() && result.getRole().equals(user.getRole());
+	}
+
+	// Checks a userName and password with one lookup by userName, and returns the role on success.
+	// A password still stored in plaintext, or hashed at a lower cost, is rehashed after it matches.
+	public LoginResult verifyCredentials(String userName, String password) throws SQLException {
+		String query = SQL_CREDENTIALS;
+		String stored = null;
+		String role = null;
+		// The connection goes back to the pool before hashing, which takes far longer than the query
+		try (Connection connection = pool.getConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(query)) {
+			pstmt.setString(1, userName);
 			try (ResultSet rs = pstmt.executeQuery()) {
-				return rs.next();
+				if (rs.next()) {
+					stored = rs.getString("password");
+					role = rs.getString("role");
+				}
+			}
+		}
+		PasswordHasher hasher = passwordHasher();
+		if (role == null) {
+			// Spend as long as a real check, so unknown names cannot be told apart by timing
+			await(hasher.verifyUnknownUser(password));
+			return LoginResult.unknownUser();
+		}
+		if (!await(hasher.verify(password, stored))) {
+			return LoginResult.wrongPassword();
+		}
+		if (hasher.needsRehash(stored)) {
+			rehashPassword(userName, password, stored);
+		}
+		return LoginResult.success(role);
+	}
+
+	// Replaces a plaintext or outdated stored password with a current hash. The login has already
+	// succeeded, so a failure here is only logged.
+	private void rehashPassword(String userName, String password, String stored) {
+		String query = SQL_REHASH_PASSWORD;
+		try {
+			String hash = await(passwordHasher().hash(password));
+			try (Connection connection = pool.getConnection();
+			     PreparedStatement pstmt = connection.prepareStatement(query)) {
+				pstmt.setString(1, hash);
+				pstmt.setString(2, userName);
+				pstmt.setString(3, stored);
+				pstmt.executeUpdate();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Waits for a password hashing result, reporting failures the way the callers already handle.
+	private static <T> T await(CompletableFuture<T> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while checking the password.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RejectedExecutionException) {
+				throw new SQLException("Too many password checks in progress. Please try again.", e.getCause());
 			}
+			throw new SQLException("Password hashing failed.", e.getCause());
+		} catch (CancellationException e) {
+			throw new SQLException("Password check cancelled because the database is closing.", e);
 		}
 	}
 	
 	// Checks if a user already exists in the database based on their userName.
+	// Answered from the user cache when possible.
 	public boolean doesUserExist(String userName) {
-	    String query = "SELECT COUNT(*) FROM cse360users WHERE userName = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        
-	        pstmt.setString(1, userName);
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        if (rs.next()) {
-	            // If the count is greater than 0, the user exists
-	            return rs.getInt(1) > 0;
-	        }
+	    try {
+	        return userCache.get(userName, this::loadUser).exists;
 	    } catch (SQLException e) {
 	        e.printStackTrace();
 	    }
 	    return false; // If an error occurs, assume user doesn't exist
 	}
 	
-	// Retrieves the role of a user from the database using their UserName.
+	// Retrieves the role of a user using their UserName. Answered from the user cache when possible.
 	public String getUserRole(String userName) {
-	    String query = "SELECT role FROM cse360users WHERE userName = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, userName);
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        if (rs.next()) {
-	            return rs.getString("role"); // Return the role if user exists
-	        }
+	    try {
+	        return userCache.get(userName, this::loadUser).role;
 	    } catch (SQLException e) {
 	        e.printStackTrace();
 	    }
 	    return null; // If no user exists or an error occurs
 	}
+
+	// Reads whether a user exists and their role in one lookup; the user cache calls this on a miss.
+	private UserCache.Entry loadUser(String userName) throws SQLException {
+	    String query = SQL_USER_ROLE;
+	    try (Connection connection = pool.getConnection();
+	         PreparedStatement pstmt = connection.prepareStatement(query)) {
+	        pstmt.setString(1, userName);
+	        try (ResultSet rs = pstmt.executeQuery()) {
+	            return rs.next() ? new UserCache.Entry(true, rs.getString("role")) : UserCache.Entry.MISSING;
+	        }
+	    }
+	}
 	
-	// Generates a new invitation code and inserts it into the database.
+	// Generates a new invitation code with the default alphabet, length and validity, and inserts it.
+	// Returns null if the code could not be saved.
 	public String generateInvitationCode() {
-	    String code = UUID.randomUUID().toString().substring(0, 4); // Generate a random 4-character code
-	    long deadlineMillis = System.currentTimeMillis() + 2 * 60 * 1000; //2 minute deadline
-	    Timestamp deadline = new Timestamp(deadlineMillis); // Set deadline as 2 minute
-	    String query = "INSERT INTO InvitationCodes (code, deadline) VALUES (?, ?)";
-
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, code);
-	        pstmt.setTimestamp(2, deadline);
-	        pstmt.executeUpdate();
+	    try {
+	        return generateInvitationCodes(1, INVITATION_ALPHABET, INVITATION_CODE_LENGTH,
+	                INVITATION_VALIDITY_MILLIS).get(0);
 	    } catch (SQLException e) {
 	        e.printStackTrace();
 	    }
-	    
-	    return code;
+	    return null;
+	}
+
+	/**
+	 * Generates count distinct invitation codes and inserts them in one transaction.
+	 *
+	 * Codes are drawn with SecureRandom from the alphabet. Duplicates within the batch are
+	 * rejected by a set as they are drawn, and codes that already exist in the table are found
+	 * with one indexed lookup per round and redrawn, so no insert ever fails on the primary key.
+	 *
+	 * @param count           How many codes to generate
+	 * @param alphabet        The characters a code may use; each must be distinct
+	 * @param length          Characters per code, at most INVITATION_CODE_MAX_LENGTH
+	 * @param validityMillis  How long the codes stay valid from now
+	 * @return                The codes, in the order they were generated, for display or export
+	 */
+	public List<String> generateInvitationCodes(int count, String alphabet, int length, long validityMillis)
+			throws SQLException {
+		if (count < 1 || count > INVITATION_MAX_BATCH) {
+			throw new IllegalArgumentException("Between 1 and " + INVITATION_MAX_BATCH + " codes can be generated at once.");
+		}
+		if (length < 1 || length > INVITATION_CODE_MAX_LENGTH) {
+			throw new IllegalArgumentException("Code length must be between 1 and " + INVITATION_CODE_MAX_LENGTH + ".");
+		}
+		if (alphabet == null || alphabet.length() < 2 || alphabet.chars().distinct().count() != alphabet.length()) {
+			throw new IllegalArgumentException("The alphabet needs at least two distinct characters.");
+		}
+		// Keep the code space at least 100 times the batch, or redraws would become frequent
+		// and the codes easy to guess
+		if (length * Math.log(alphabet.length()) < Math.log(count * 100.0)) {
+			throw new IllegalArgumentException("Codes of " + length + " characters from this alphabet are too few for "
+					+ count + " invitations. Use longer codes or a larger alphabet.");
+		}
+
+		LinkedHashSet<String> codes = new LinkedHashSet<>();
+		try (Connection connection = pool.getConnection()) {
+			// Draw until the batch is full and none of it is already taken
+			while (codes.size() < count) {
+				List<String> drawn = new ArrayList<>();
+				while (codes.size() < count) {
+					String code = randomCode(alphabet, length);
+					if (codes.add(code)) {
+						drawn.add(code);
+					}
+				}
+				codes.removeAll(existingInvitationCodes(connection, drawn));
+			}
+
+			Timestamp deadline = new Timestamp(System.currentTimeMillis() + validityMillis);
+			connection.setAutoCommit(false);
+			try (PreparedStatement pstmt = connection.prepareStatement(SQL_INSERT_INVITATION)) {
+				for (String code : codes) {
+					pstmt.setString(1, code);
+					pstmt.setTimestamp(2, deadline);
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		return new ArrayList<>(codes);
+	}
+
+	private String randomCode(String alphabet, int length) {
+		char[] code = new char[length];
+		for (int i = 0; i < length; i++) {
+			code[i] = alphabet.charAt(secureRandom.nextInt(alphabet.length()));
+		}
+		return new String(code);
+	}
+
+	// Returns which of the given codes are already in the table.
+	private List<String> existingInvitationCodes(Connection connection, List<String> codes) throws SQLException {
+		List<String> existing = new ArrayList<>();
+		try (PreparedStatement pstmt = connection.prepareStatement(SQL_EXISTING_INVITATIONS)) {
+			pstmt.setArray(1, connection.createArrayOf("VARCHAR", codes.toArray()));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					existing.add(rs.getString(1));
+				}
+			}
+		}
+		return existing;
 	}
 
  
 	// Validates an invitation code to check if it is unused.
 	public boolean validateInvitationCode(String code) {
-		String query = "SELECT * FROM InvitationCodes WHERE code = ? AND isUsed = FALSE AND deadline > CURRENT_TIMESTAMP";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		String query = SQL_VALID_INVITATION;
+	    try (Connection connection = pool.getConnection();
+	         PreparedStatement pstmt = connection.prepareStatement(query)) {
 	        pstmt.setString(1, code);
 	        ResultSet rs = pstmt.executeQuery();
 	        if (rs.next()) {
 	            // Mark the code as used
-	            markInvitationCodeAsUsed(code);
+	            markInvitationCodeAsUsed(connection, code);
 	            return true;
 	        }
 	    } catch (SQLException e) {
@@ -198,8 +864,8 @@ public class DatabaseHelper {
 	}
 	
 	// Marks the invitation code as used in the database.
-	private void markInvitationCodeAsUsed(String code) {
-	    String query = "UPDATE InvitationCodes SET isUsed = TRUE WHERE code = ?";
+	private void markInvitationCodeAsUsed(Connection connection, String code) {
+	    String query = SQL_MARK_INVITATION_USED;
 	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
 	        pstmt.setString(1, code);
 	        pstmt.executeUpdate();
@@ -208,144 +874,76 @@ public class DatabaseHelper {
 	    }
 	}
 	
+	// Issues a new OTP for a password reset, replacing any the user already had.
 	public String generateOTP(String userName) {
-	    // Step 1: Clean up any unused OTPs for the user before generating a new one
-	    String cleanupQuery = "DELETE FROM user_otp WHERE userName = ? AND isUsed = FALSE";
-	    try (PreparedStatement cleanupStmt = connection.prepareStatement(cleanupQuery)) {
-	        cleanupStmt.setString(1, userName);
-	        cleanupStmt.executeUpdate();
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
-
-	    // Step 2: Generate a random 6-digit OTP
-	    String otp = String.format("%06d", (int) (Math.random() * 1000000));
-
-	    // Step 3: Insert the new OTP into the database with isUsed = FALSE
-	    String query = "INSERT INTO user_otp (userName, otp, isUsed) VALUES (?, ?, FALSE)";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, userName);
-	        pstmt.setString(2, otp);
-	        pstmt.executeUpdate();
-	        connection.commit();  // Ensure the OTP is saved to the database
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
-
+	    String otp = otpStore().issue(userName);
 	    System.out.println("Generated OTP for user " + userName + ": " + otp);
 	    return otp;
 	}
 
-
-	 
+	// Checks an OTP and uses it up. It is valid once, and only until it expires.
 	public boolean validateOTP(String userName, String otp) {
-	    String query = "SELECT otp, isUsed FROM user_otp WHERE userName = ? AND otp = ? AND isUsed = FALSE";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, userName);
-	        pstmt.setString(2, otp);
-	        ResultSet rs = pstmt.executeQuery();
-
-	        if (rs.next()) {
-	            boolean isUsed = rs.getBoolean("isUsed");
-
-	            if (!isUsed) {
-	                System.out.println("Valid OTP found. Marking as used...");
-	                markOtpAsUsed(userName, otp);  // Mark OTP as used
-	                return true;  // OTP is valid
-	            } else {
-	                System.out.println("OTP has already been used.");
-	            }
-	        } else {
-	            System.out.println("No matching OTP found for user: " + userName);
-	        }
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
-	    return false;  // OTP is invalid or already used
+	    return otpStore().consume(userName, otp);
 	}
 
-
-	private void markOtpAsUsed(String userName, String otp) {
-	    String query = "UPDATE user_otp SET isUsed = TRUE WHERE userName = ? AND otp = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, userName);
-	        pstmt.setString(2, otp);
-	        int rowsUpdated = pstmt.executeUpdate();
-	        System.out.println("Rows updated after marking OTP as used: " + rowsUpdated);
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
+	public void clearOTP(String userName) {
+	    otpStore().clear(userName);
 	}
 
-
-	 public void clearOTP(String userName) {
-	        String query = "DELETE FROM user_otp WHERE userName = ?";
-
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	            pstmt.setString(1, userName);
-	            pstmt.executeUpdate();
-	        } catch (SQLException e) {
-	            e.printStackTrace();
-	        }
-	    }
-
+	  // Stores a salted hash of the new password.
 	  public void updatePassword(String userName, String newPassword) {
-	        String query = "UPDATE cse360users SET password = ? WHERE userName = ?";
+	        String query = SQL_UPDATE_PASSWORD;
 
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	            pstmt.setString(1, newPassword);
-	            pstmt.setString(2, userName);
-	            pstmt.executeUpdate();
+	        try {
+	            String hash = await(passwordHasher().hash(newPassword));
+	            try (Connection connection = pool.getConnection();
+	                 PreparedStatement pstmt = connection.prepareStatement(query)) {
+	                pstmt.setString(1, hash);
+	                pstmt.setString(2, userName);
+	                pstmt.executeUpdate();
+	            }
+	            publishInvalidation(InvalidationBus.Entity.USER, userName);
 	        } catch (SQLException e) {
 	            e.printStackTrace();
 	        }
 	    }
 
+	  // True when the user has an OTP that has not expired or been used.
 	  public boolean hasOTP(String userName) {
-	        String query = "SELECT COUNT(*) FROM user_otp WHERE userName = ?";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	            pstmt.setString(1, userName);
-	            ResultSet rs = pstmt.executeQuery();
-	            if (rs.next()) {
-	                return rs.getInt(1) > 0;
-	            }
-	        } catch (SQLException e) {
-	            e.printStackTrace();
-	        }
-	        return false; // If an error occurs, assume no OTP exists
+	        return otpStore().has(userName);
 	    }
 	//Create method to get userName and Role as a list//
-		public List<String[]> getAllUsernamesAndRoles(){
-			List<String[]> userList = new ArrayList<>(); 	
-			String query = "SELECT userName, role FROM cse360users";
-			
-			try (PreparedStatement pstmt = connection.prepareStatement(query); ResultSet rs = pstmt.executeQuery()) {
-				while (rs.next()) {
-					userList.add(new String[]{rs.getString("userName"), rs.getString("role")});
-				}
+		public List<User> getAllUsernamesAndRoles(){
+			try {
+				return queryList(SQL_ALL_USERS_AND_ROLES, RowMappers.USER_ROLE);
 			} catch (SQLException e) {
 				e.printStackTrace();
+				return new ArrayList<>();
 			}
-			return userList;
 		}
 		
 		//Create method to delete Users
 		public boolean deleteUser(String username) {
-			String query = "DELETE FROM cse360users WHERE userName = ?";
-			try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+			String query = SQL_DELETE_USER;
+			try (Connection connection = pool.getConnection();
+			     PreparedStatement pstmt = connection.prepareStatement(query)) {
 				pstmt.setString(1, username);
 				int affectedRows = pstmt.executeUpdate();
 				return affectedRows > 0;
 			} catch (SQLException e) {
 				e.printStackTrace();
 				return false;
+			} finally {
+				userCache.invalidate(username);
+				publishInvalidation(InvalidationBus.Entity.USER, username);
 			}
 		}
 		
 		// Div (New Method to Update User's Role)
 		public boolean updateUserRole(String userName, String newRole){
-			String query = "UPDATE cse360users SET role = ? WHERE userName = ?";
-			try (PreparedStatement pstmt = connection.prepareStatement(query)){
+			String query = SQL_UPDATE_ROLE;
+			try (Connection connection = pool.getConnection();
+			     PreparedStatement pstmt = connection.prepareStatement(query)){
 				pstmt.setString(1, newRole);
 	            pstmt.setString(2, userName);
 	            int affectedRows = pstmt.executeUpdate();
@@ -353,13 +951,17 @@ public class DatabaseHelper {
 	        } catch (SQLException e) {
 	            e.printStackTrace();
 	            return false;
+	        } finally {
+	            userCache.invalidate(userName);
+	            publishInvalidation(InvalidationBus.Entity.USER, userName);
 	        }
 	    }
 
 	    // Method to count number of Admin Users
 	    public int countAdmins() {
-	        String query = "SELECT COUNT(*) FROM cse360users WHERE role = 'admin'";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	        String query = SQL_COUNT_ADMINS;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
 	            ResultSet rs = pstmt.executeQuery();
 	            if (rs.next()) {
 	                return rs.getInt(1);
@@ -371,94 +973,524 @@ public class DatabaseHelper {
 	    }
 	    
 	    // New Method: Get all Questions
-	    public List<String[]> getAllQuestions() throws SQLException {
-	        List<String[]> questions = new ArrayList<>();
-	        String query = "SELECT id, text FROM questions";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query);
-	             ResultSet rs = pstmt.executeQuery()) {
-	            while (rs.next()) {
-	                questions.add(new String[]{String.valueOf(rs.getInt("id")), rs.getString("text")});
+	    public List<Question> getAllQuestions() throws SQLException {
+	        return queryList(SQL_ALL_QUESTIONS, RowMappers.QUESTION);
+	    }
+
+	    // New Method: Get all Answers
+	    public List<Answer> getAllAnswers() throws SQLException {
+	        return queryList(SQL_ALL_ANSWERS, RowMappers.ANSWER);
+	    }
+
+	    // Returns one page of questions ordered by age (oldest first).
+	    // Start with PageCursor.FIRST (or LAST) and follow page.next() / page.previous().
+	    public Page<Question> getQuestionsPage(PageCursor cursor, int pageSize) throws SQLException {
+	        return queryPage(QUESTION_PAGES, cursor, pageSize);
+	    }
+
+	    // Returns one page of answers ordered by age (oldest first).
+	    public Page<Answer> getAnswersPage(PageCursor cursor, int pageSize) throws SQLException {
+	        return queryPage(ANSWER_PAGES, cursor, pageSize);
+	    }
+
+	    // Returns one page of questions that have no answers yet, oldest first.
+	    // The total on these pages is unknown (-1).
+	    public Page<Question> getUnansweredQuestionsPage(PageCursor cursor, int pageSize) throws SQLException {
+	        return queryPage(UNANSWERED_PAGES, cursor, pageSize);
+	    }
+
+	    // Runs a keyset page query. One extra row is fetched to find out whether there is more to read.
+	    private <T> Page<T> queryPage(PageQueries<T> sql, PageCursor cursor, int pageSize) throws SQLException {
+	        if (pageSize <= 0) {
+	            throw new IllegalArgumentException("Page size must be positive.");
+	        }
+	        boolean backward = cursor.isBackward();
+	        String query = cursor.isEdge() ? (backward ? sql.last : sql.first) : (backward ? sql.before : sql.after);
+
+	        List<T> rows = new ArrayList<>(pageSize + 1);
+	        List<Timestamp> stamps = new ArrayList<>(pageSize + 1);
+	        List<Integer> ids = new ArrayList<>(pageSize + 1);
+	        long total = -1;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
+	            int index = 1;
+	            if (!cursor.isEdge()) {
+	                pstmt.setTimestamp(index++, cursor.getCreatedAt());
+	                pstmt.setTimestamp(index++, cursor.getCreatedAt());
+	                pstmt.setInt(index++, cursor.getId());
+	            }
+	            pstmt.setInt(index, pageSize + 1);
+	            try (ResultSet rs = pstmt.executeQuery()) {
+	                while (rs.next()) {
+	                    // A row the mapper skips is null here, but still moves the cursors
+	                    rows.add(sql.mapper.map(rs));
+	                    stamps.add(rs.getTimestamp(sql.createdAtColumn));
+	                    ids.add(rs.getInt(1));
+	                }
+	            }
+	            if (sql.count != null) {
+	                try (PreparedStatement count = connection.prepareStatement(sql.count);
+	                     ResultSet rs = count.executeQuery()) {
+	                    total = rs.next() ? rs.getLong(1) : 0;
+	                }
 	            }
 	        }
-	        return questions;
+
+	        boolean more = rows.size() > pageSize;
+	        if (more) {
+	            rows.remove(pageSize);
+	            stamps.remove(pageSize);
+	            ids.remove(pageSize);
+	        }
+	        if (backward) {
+	            Collections.reverse(rows);
+	            Collections.reverse(stamps);
+	            Collections.reverse(ids);
+	        }
+
+	        boolean hasNext = backward ? !cursor.isEdge() : more;
+	        boolean hasPrevious = backward ? more : !cursor.isEdge();
+	        PageCursor next = null;
+	        PageCursor previous = null;
+	        if (rows.isEmpty()) {
+	            // Ran off one end of the list; offer a way back from the other end
+	            next = hasNext ? PageCursor.FIRST : null;
+	            previous = hasPrevious ? PageCursor.LAST : null;
+	        } else {
+	            int last = rows.size() - 1;
+	            if (hasNext) {
+	                next = PageCursor.after(stamps.get(last), ids.get(last));
+	            }
+	            if (hasPrevious) {
+	                previous = PageCursor.before(stamps.get(0), ids.get(0));
+	            }
+	        }
+	        rows.removeIf(Objects::isNull);
+	        return new Page<>(rows, next, previous, total);
 	    }
 
-	    // New Method: Get all Answers
-	    public List<String[]> getAllAnswers() throws SQLException {
-	        List<String[]> answers = new ArrayList<>();
-	        String query = "SELECT id, text FROM answers";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query);
-	             ResultSet rs = pstmt.executeQuery()) {
-	            while (rs.next()) {
-	                answers.add(new String[]{String.valueOf(rs.getInt("id")), rs.getString("text")});
+	    /**
+	     * Streams every question in id order without loading the table into memory.
+	     * The stream holds a pooled connection, so always close it (try-with-resources);
+	     * reading it to the end also releases the connection.
+	     */
+	    public Stream<Question> streamQuestions(int fetchSize) throws SQLException {
+	        return RowStream.open(pool, SQL_STREAM_QUESTIONS, fetchSize, RowMappers.QUESTION).stream();
+	    }
+
+	    // Streams every answer in id order. Same closing rules as streamQuestions.
+	    public Stream<Answer> streamAnswers(int fetchSize) throws SQLException {
+	        return RowStream.open(pool, SQL_STREAM_ANSWERS, fetchSize, RowMappers.ANSWER).stream();
+	    }
+
+	    // Passes every question to the callback in id order. Resources are closed before returning.
+	    public void forEachQuestion(int fetchSize, Consumer<Question> callback) throws SQLException {
+	        RowStream.open(pool, SQL_STREAM_QUESTIONS, fetchSize, RowMappers.QUESTION).forEach(callback);
+	    }
+
+	    // Passes every answer to the callback in id order. Resources are closed before returning.
+	    public void forEachAnswer(int fetchSize, Consumer<Answer> callback) throws SQLException {
+	        RowStream.open(pool, SQL_STREAM_ANSWERS, fetchSize, RowMappers.ANSWER).forEach(callback);
+	    }
+
+	    /**
+	     * Inserts the questions and then the answers in one transaction using JDBC batches.
+	     * Rows with an id of 0 or less get a generated id; other ids are kept as given, and the
+	     * id counters are moved past them afterwards so later inserts do not collide. Until then
+	     * other inserts in this instance wait (see insertLock).
+	     * Nothing is inserted if any row fails.
+	     */
+	    public void insertBatch(List<Question> questions, List<Answer> answers) throws SQLException {
+	        boolean explicitQuestionIds = false;
+	        boolean explicitAnswerIds = false;
+	        // Generated ids are read back so the search index can refer to the new rows
+	        int[] questionIds = new int[questions.size()];
+	        int[] answerIds = new int[answers.size()];
+	        boolean explicitIds = questions.stream().anyMatch(q -> q.getId() > 0)
+	                || answers.stream().anyMatch(a -> a.getId() > 0);
+	        Lock lock = explicitIds ? insertLock.writeLock() : insertLock.readLock();
+	        lock.lock();
+	        try (Connection connection = pool.getConnection()) {
+	            connection.setAutoCommit(false);
+	            try (PreparedStatement generated = connection.prepareStatement(SQL_INSERT_QUESTION, Statement.RETURN_GENERATED_KEYS);
+	                 PreparedStatement withId = connection.prepareStatement(SQL_INSERT_QUESTION_WITH_ID)) {
+	                for (Question q : questions) {
+	                    if (q.getId() > 0) {
+	                        withId.setInt(1, q.getId());
+	                        withId.setString(2, q.getText());
+	                        withId.setString(3, q.getAuthor());
+	                        withId.addBatch();
+	                        explicitQuestionIds = true;
+	                    } else {
+	                        generated.setString(1, q.getText());
+	                        generated.setString(2, q.getAuthor());
+	                        generated.addBatch();
+	                    }
+	                }
+	                withId.executeBatch();
+	                generated.executeBatch();
+	                readGeneratedIds(generated, questions, Question::getId, questionIds);
+	            }
+	            try (PreparedStatement generated = connection.prepareStatement(SQL_INSERT_ANSWER, Statement.RETURN_GENERATED_KEYS);
+	                 PreparedStatement withId = connection.prepareStatement(SQL_INSERT_ANSWER_WITH_ID)) {
+	                for (Answer a : answers) {
+	                    if (a.getId() > 0) {
+	                        withId.setInt(1, a.getId());
+	                        withId.setInt(2, a.getQuestionId());
+	                        withId.setString(3, a.getAnswerText());
+	                        withId.setString(4, a.getAuthor());
+	                        withId.addBatch();
+	                        explicitAnswerIds = true;
+	                    } else {
+	                        generated.setInt(1, a.getQuestionId());
+	                        generated.setString(2, a.getAnswerText());
+	                        generated.setString(3, a.getAuthor());
+	                        generated.addBatch();
+	                    }
+	                }
+	                withId.executeBatch();
+	                generated.executeBatch();
+	                readGeneratedIds(generated, answers, Answer::getId, answerIds);
+	            }
+	            connection.commit();
+
+	            // ALTER commits on its own, so this runs after the rows are safely in
+	            if (explicitQuestionIds) {
+	                restartIdentity(connection, "questions", SQL_MAX_QUESTION_ID);
+	            }
+	            if (explicitAnswerIds) {
+	                restartIdentity(connection, "answers", SQL_MAX_ANSWER_ID);
+	            }
+	        } finally {
+	            lock.unlock();
+	        }
+
+	        for (int id : questionIds) {
+	            publishInvalidation(InvalidationBus.Entity.QUESTION, id);
+	        }
+	        for (int id : answerIds) {
+	            publishInvalidation(InvalidationBus.Entity.ANSWER, id);
+	        }
+	        updateSearchIndex(index -> {
+	            for (int i = 0; i < questionIds.length; i++) {
+	                index.addQuestion(questionIds[i], questions.get(i).getText());
+	            }
+	            for (int i = 0; i < answerIds.length; i++) {
+	                index.addAnswer(answerIds[i], answers.get(i).getQuestionId(), answers.get(i).getAnswerText());
+	            }
+	        });
+	    }
+
+	    // Fills in ids[i] for every row, taking the generated keys in order for rows without an id.
+	    private <T> void readGeneratedIds(PreparedStatement generated, List<T> rows, ToIntFunction<T> idOf,
+	                                      int[] ids) throws SQLException {
+	        try (ResultSet keys = generated.getGeneratedKeys()) {
+	            for (int i = 0; i < ids.length; i++) {
+	                int id = idOf.applyAsInt(rows.get(i));
+	                ids[i] = id > 0 ? id : (keys.next() ? keys.getInt(1) : -1);
 	            }
 	        }
-	        return answers;
+	    }
+
+	    // Held around inserts with generated ids made elsewhere, e.g. by WriteBehindRepository.
+	    Lock generatedInsertLock() {
+	        return insertLock.readLock();
+	    }
+
+	    // Moves a table's id counter just past its highest id. Call with the insert write lock held.
+	    private void restartIdentity(Connection connection, String table, String maxQuery) throws SQLException {
+	        int next;
+	        try (PreparedStatement pstmt = connection.prepareStatement(maxQuery);
+	             ResultSet rs = pstmt.executeQuery()) {
+	            next = (rs.next() ? rs.getInt(1) : 0) + 1;
+	        }
+	        try (Statement statement = connection.createStatement()) {
+	            statement.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+	        }
 	    }
 
 	    // New Method: Update Question
 	    public void updateQuestion(int id, String newText) throws SQLException {
-	        String query = "UPDATE questions SET text = ? WHERE id = ?";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	        String query = SQL_UPDATE_QUESTION;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
 	            pstmt.setString(1, newText);
 	            pstmt.setInt(2, id);
 	            pstmt.executeUpdate();
 	        }
+	        publishInvalidation(InvalidationBus.Entity.QUESTION, id);
+	        updateSearchIndex(index -> index.update(SearchIndex.Kind.QUESTION, id, newText));
 	    }
 
 	    // New Method: Update Answer
 	    public void updateAnswer(int id, String newText) throws SQLException {
-	        String query = "UPDATE answers SET text = ? WHERE id = ?";
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	        String query = SQL_UPDATE_ANSWER;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
 	            pstmt.setString(1, newText);
 	            pstmt.setInt(2, id);
 	            pstmt.executeUpdate();
 	        }
+	        publishInvalidation(InvalidationBus.Entity.ANSWER, id);
+	        updateSearchIndex(index -> index.update(SearchIndex.Kind.ANSWER, id, newText));
 	    }
-	    
-	    public List<String[]> getQuestionsByUser(String studentUsername) throws SQLException {
-	        List<String[]> questions = new ArrayList<>();
-	        String query = "SELECT id, text FROM questions WHERE createdBy = ?";
 
+	    // Deletes a question; its answers go with it through the foreign key's cascade.
+	    public void deleteQuestion(int id) throws SQLException {
+	        String query = SQL_DELETE_QUESTION;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
+	            pstmt.setInt(1, id);
+	            pstmt.executeUpdate();
+	        }
+	        publishInvalidation(InvalidationBus.Entity.QUESTION, id);
+	        updateSearchIndex(index -> index.removeQuestion(id));
+	    }
+
+	    public void deleteAnswer(int id) throws SQLException {
+	        String query = SQL_DELETE_ANSWER;
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
+	            pstmt.setInt(1, id);
+	            pstmt.executeUpdate();
+	        }
+	        publishInvalidation(InvalidationBus.Entity.ANSWER, id);
+	        updateSearchIndex(index -> index.removeAnswer(id));
+	    }
+
+	    /**
+	     * Full-text search over questions and answers, best match first. The first search builds
+	     * the index by streaming both tables; after that, the writes made through this helper keep
+	     * it current. Each hit carries a snippet of the post's text with the matching words marked.
+	     */
+	    public List<SearchIndex.Hit> search(String queryText, int limit) throws SQLException {
+	        List<SearchIndex.Hit> hits = getSearchIndex().search(queryText, limit);
+	        if (hits.isEmpty()) {
+	            return hits;
+	        }
+	        List<Integer> questionIds = new ArrayList<>();
+	        List<Integer> answerIds = new ArrayList<>();
+	        for (SearchIndex.Hit hit : hits) {
+	            (hit.getKind() == SearchIndex.Kind.QUESTION ? questionIds : answerIds).add(hit.getId());
+	        }
+	        // One query per kind rather than one per hit
+	        Map<Integer, String> questionTexts;
+	        Map<Integer, String> answerTexts;
+	        try (Connection connection = pool.getConnection()) {
+	            questionTexts = queryTexts(connection, SQL_QUESTION_TEXTS, questionIds);
+	            answerTexts = queryTexts(connection, SQL_ANSWER_TEXTS, answerIds);
+	        }
+	        List<String> terms = SearchIndex.tokenize(queryText);
+	        for (SearchIndex.Hit hit : hits) {
+	            String text = (hit.getKind() == SearchIndex.Kind.QUESTION ? questionTexts : answerTexts).get(hit.getId());
+	            hit.snippet = SearchIndex.highlight(text, terms, SNIPPET_LENGTH);
+	        }
+	        return hits;
+	    }
+
+	    // Reads the text of the rows with the given ids, keyed by id. No query when there are none.
+	    private static Map<Integer, String> queryTexts(Connection connection, String query, List<Integer> ids)
+	            throws SQLException {
+	        Map<Integer, String> texts = new HashMap<>();
+	        if (ids.isEmpty()) {
+	            return texts;
+	        }
 	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	            pstmt.setString(1, studentUsername);
-	            ResultSet rs = pstmt.executeQuery();
-	            while (rs.next()) {
-	                questions.add(new String[]{String.valueOf(rs.getInt("id")), rs.getString("text")});
+	            pstmt.setArray(1, connection.createArrayOf("INTEGER", ids.toArray()));
+	            try (ResultSet rs = pstmt.executeQuery()) {
+	                while (rs.next()) {
+	                    texts.put(rs.getInt(1), rs.getString(2));
+	                }
 	            }
 	        }
-	        return questions;
+	        return texts;
 	    }
 
-	    
-	    public List<String[]> getAnswersByUser(String studentUsername) throws SQLException {
-	        List<String[]> answers = new ArrayList<>();
-	        String query = "SELECT id, text FROM answers WHERE answeredBy = ?";
+	    /**
+	     * Returns the search index, building it from the tables on first use. Writes made while
+	     * the tables are streamed are recorded and replayed onto the new index before it is
+	     * published, so a row changed after the stream has passed it is not left stale. Replaying
+	     * a change the stream already saw is harmless: each one sets a post's text or removes it.
+	     */
+	    public SearchIndex getSearchIndex() throws SQLException {
+	        SearchIndex current = searchIndex;
+	        if (current != null) {
+	            return current;
+	        }
+	        synchronized (searchIndexBuild) {
+	            if (searchIndex != null) {
+	                return searchIndex;
+	            }
+	            synchronized (indexChanges) {
+	                changesDuringBuild = new ArrayList<>();
+	            }
+	            SearchIndex index = new SearchIndex();
+	            try {
+	                forEachQuestion(DEFAULT_FETCH_SIZE, q -> index.addQuestion(q.getId(), q.getText()));
+	                forEachAnswer(DEFAULT_FETCH_SIZE, a -> index.addAnswer(a.getId(), a.getQuestionId(), a.getAnswerText()));
+	            } catch (SQLException | RuntimeException e) {
+	                synchronized (indexChanges) {
+	                    changesDuringBuild = null;
+	                }
+	                throw e;
+	            }
+	            synchronized (indexChanges) {
+	                for (Consumer<SearchIndex> change : changesDuringBuild) {
+	                    change.accept(index);
+	                }
+	                changesDuringBuild = null;
+	                searchIndex = index;
+	            }
+	            return index;
+	        }
+	    }
 
-	        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	            pstmt.setString(1, studentUsername);
-	            ResultSet rs = pstmt.executeQuery();
-	            while (rs.next()) {
-	                answers.add(new String[]{String.valueOf(rs.getInt("id")), rs.getString("text")});
+	    /**
+	     * Applies a write to the search index: right away once it is built, recorded for replay
+	     * while it is being built, and not at all before the first search, which reads the tables.
+	     */
+	    void updateSearchIndex(Consumer<SearchIndex> change) {
+	        SearchIndex index = searchIndex;
+	        if (index == null) {
+	            synchronized (indexChanges) {
+	                index = searchIndex;
+	                if (index == null) {
+	                    if (changesDuringBuild != null) {
+	                        changesDuringBuild.add(change);
+	                    }
+	                    return;
+	                }
 	            }
 	        }
-	        return answers;
+	        change.accept(index);
 	    }
 
+	    // True once the index is built or while it is being built.
+	    private boolean searchIndexInUse() {
+	        synchronized (indexChanges) {
+	            return searchIndex != null || changesDuringBuild != null;
+	        }
+	    }
+
+	    // Reads the text column of one row by id, or null if it is gone.
+	    private String queryText(String query, int id) throws SQLException {
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
+	            pstmt.setInt(1, id);
+	            try (ResultSet rs = pstmt.executeQuery()) {
+	                return rs.next() ? rs.getString(1) : null;
+	            }
+	        }
+	    }
 	    
-	// Closes the database connection and statement.
-	public void closeConnection() {
-		try{ 
-			if(statement!=null) statement.close(); 
-		} catch(SQLException se2) { 
-			se2.printStackTrace();
-		} 
-		try { 
-			if(connection!=null) connection.close(); 
-		} catch(SQLException se){ 
-			se.printStackTrace(); 
-		} 
+	    public List<Question> getQuestionsByUser(String studentUsername) throws SQLException {
+	        return queryList(SQL_QUESTIONS_BY_USER, RowMappers.QUESTION, studentUsername);
+	    }
+
+	    public List<Answer> getAnswersByUser(String studentUsername) throws SQLException {
+	        return queryList(SQL_ANSWERS_BY_USER, RowMappers.ANSWER, studentUsername);
+	    }
+
+	    // Runs a query with string parameters and maps every row.
+	    private <T> List<T> queryList(String query, RowMapper<T> mapper, String... params) throws SQLException {
+	        List<T> results = new ArrayList<>();
+	        try (Connection connection = pool.getConnection();
+	             PreparedStatement pstmt = connection.prepareStatement(query)) {
+	            for (int i = 0; i < params.length; i++) {
+	                pstmt.setString(i + 1, params[i]);
+	            }
+	            try (ResultSet rs = pstmt.executeQuery()) {
+	                while (rs.next()) {
+	                    T row = mapper.map(rs);
+	                    if (row != null) { // null: a row the mapper skips
+	                        results.add(row);
+	                    }
+	                }
+	            }
+	        }
+	        return results;
+	    }
+
+	// The statements behind one paginated listing. count may be null when no cheap count exists.
+	private static class PageQueries<T> {
+		final String first, last, after, before, count;
+		final RowMapper<T> mapper;
+		final int createdAtColumn;
+
+		PageQueries(String first, String last, String after, String before, String count,
+				RowMapper<T> mapper, int createdAtColumn) {
+			this.first = first;
+			this.last = last;
+			this.after = after;
+			this.before = before;
+			this.count = count;
+			this.mapper = mapper;
+			this.createdAtColumn = createdAtColumn;
+		}
+	}
+
+	// Closes every pooled database connection.
+	public synchronized void closeConnection() {
+		if (maintenance != null) {
+			maintenance.shutdown();
+			maintenance = null;
+		}
+		if (writeBehind != null) {
+			writeBehind.close(); // Writes what is still queued while the pool is open
+			writeBehind = null;
+		}
+		if (invalidations != null) {
+			try {
+				invalidations.flush(); // Tell the other instances about the last changes
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			invalidations = null;
+		}
+		if (async != null) {
+			async.shutdown();
+			async = null;
+		}
+		if (otpStore != null) {
+			otpStore.close(); // Writes what is still queued while the pool is open
+			otpStore = null;
+		}
+		if (passwordHasher != null) {
+			passwordHasher.shutdown();
+			passwordHasher = null;
+		}
+		searchIndex = null;
+		userCache.clear();
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+		stopStartedServer();
+	}
+
+	/**
+	 * Stops the H2 server this instance started, if any, unless other sessions are still using it.
+	 * A server left running goes away with this process, and the instances attached to it then
+	 * find the database again (see reconnectToServer).
+	 */
+	private void stopStartedServer() {
+		DatabaseServer server = startedServer;
+		if (server == null) {
+			return;
+		}
+		startedServer = null;
+		int others;
+		try {
+			others = DatabaseServer.otherSessions(StorageProfile.SERVER.url());
+		} catch (SQLException e) {
+			others = 0; // The server cannot be asked, so nobody can be using it either
+		}
+		if (others > 0) {
+			System.out.println("Leaving the H2 server running for " + others + " other session(s).");
+		} else {
+			server.stop();
+		}
 	}
 	
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.h2.tools.Server;
+
+
+/**
+ * The DatabaseServer class runs an H2 TCP server in this process, so that several application
+ * instances (or a headless service next to the GUI) can share one database file. An embedded
+ * H2 database is locked by the process that opened it; through the server, every instance
+ * opens it over a local socket instead.
+ *
+ * With the SERVER storage profile, DatabaseHelper first tries to attach to a server that is
+ * already running at -Dcse360.db.server (default localhost:9092). If none answers on this
+ * machine, it starts one here and attaches to that. If the server cannot be started either, it
+ * falls back to opening the file directly, as the EMBEDDED profile does.
+ *
+ * The server accepts connections from this machine only. The instance that started it stops it
+ * on close only if no other sessions are using it. Its threads are daemon threads, so a server
+ * left running does not keep the JVM alive and goes away with that process; the instances still
+ * attached then find the database again on their next connection, and one of them starts a new
+ * server. Running main() gives a server with no GUI attached, which outlives every instance.
+ */
+public class DatabaseServer {
+
+	// How long to wait for a server to answer before treating the address as having none
+	static final long PROBE_TIMEOUT_MILLIS = 3000;
+
+	private final Server server;
+
+	private DatabaseServer(Server server) {
+		this.server = server;
+	}
+
+	/**
+	 * Starts a TCP server on the given port. The database at path is created first if it does
+	 * not exist, because the server itself does not create databases for remote connections.
+	 */
+	public static DatabaseServer start(String path, int port) throws SQLException {
+		// Opening the file once creates it; this fails if another process holds the file open
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:" + path, DatabaseHelper.USER,
+				DatabaseHelper.PASS)) {
+			connection.isValid(1);
+		}
+		Server server = Server.createTcpServer("-tcpPort", Integer.toString(port), "-tcpDaemon").start();
+		return new DatabaseServer(server);
+	}
+
+	/**
+	 * True when an H2 server answers at the URL within PROBE_TIMEOUT_MILLIS. The H2 client has no
+	 * read timeout, so a port held by some other program that accepts the connection and never
+	 * replies would hang the caller; the probe runs on a daemon thread that is abandoned if it
+	 * does not finish in time.
+	 */
+	static boolean isReachable(String url) {
+		FutureTask<Boolean> probe = new FutureTask<>(() -> {
+			try (Connection connection = DriverManager.getConnection(url, DatabaseHelper.USER, DatabaseHelper.PASS)) {
+				return connection.isValid(1);
+			} catch (SQLException e) {
+				return false;
+			}
+		});
+		Thread thread = new Thread(probe, "h2-server-probe");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			return probe.get(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// True for addresses that name this machine; only for those is a server started on demand.
+	static boolean isLocal(String host) {
+		return host.equals("localhost") || host.equals("127.0.0.1") || host.equals("::1");
+	}
+
+	public int getPort() {
+		return server.getPort();
+	}
+
+	public boolean isRunning() {
+		return server.isRunning(false);
+	}
+
+	/**
+	 * Counts the sessions on the server at the URL other than the one this call opens, including
+	 * this process's own pooled connections that are still open.
+	 */
+	static int otherSessions(String url) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, DatabaseHelper.USER, DatabaseHelper.PASS);
+			 Statement statement = connection.createStatement();
+			 ResultSet rs = statement.executeQuery(
+					 "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS WHERE SESSION_ID <> SESSION_ID()")) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	// Stops the server. Instances attached to it lose their connections until they find the database again.
+	public void stop() {
+		server.stop();
+	}
+
+	/**
+	 * Runs a server with no GUI attached, until the process is stopped. The main thread waits
+	 * forever, since the server's own threads are daemons.
+	 * Usage: DatabaseServer [port], with the database path taken from -Dcse360.db.path.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : StorageProfile.serverPort();
+		String path = System.getProperty(StorageProfile.PATH_PROPERTY, StorageProfile.DEFAULT_PATH);
+		DatabaseServer server = start(path, port);
+		System.out.println("H2 server for " + path + " listening on port " + server.getPort() + ". Stop with Ctrl+C.");
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		Thread.currentThread().join();
+	}
+}
@@ -8,8 +8,9 @@ import javafx.stage.Stage;
 import application.StudentHomePage;
 
 
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * EditQA allows students to edit their submitted questions and answers.
@@ -39,35 +40,43 @@ public class EditQA {
         Button backButton = new Button("Back");
         Label statusLabel = new Label();
 
-        // Load student's questions and answers
-        try {
-            List<String[]> questions = databaseHelper.getQuestionsByUser(studentUsername);
-            List<String[]> answers = databaseHelper.getAnswersByUser(studentUsername);
-
-            
-            for (String[] question : questions) {
-                qaList.getItems().add("Q: " + question[1] + " (ID: " + question[0] + ")");
-            }
-            for (String[] answer : answers) {
-                qaList.getItems().add("A: " + answer[1] + " (ID: " + answer[0] + ")");
-            }
-        } catch (SQLException e) {
-            statusLabel.setText("Error retrieving data.");
-            e.printStackTrace();
-        }
+        // Load student's questions and answers. entries[i] is the Question or Answer shown in row i,
+        // so a selection maps straight back to its object without parsing the row text.
+        List<Object> entries = new ArrayList<>();
+        statusLabel.setText("Loading...");
+        databaseHelper.async().getQuestionsByUser(studentUsername)
+                .thenCombine(databaseHelper.async().getAnswersByUser(studentUsername), (questions, answers) -> {
+                    for (Question question : questions) {
+                        qaList.getItems().add("Q: " + question.getText() + " (ID: " + question.getId() + ")");
+                        entries.add(question);
+                    }
+                    for (Answer answer : answers) {
+                        qaList.getItems().add("A: " + answer.getAnswerText() + " (ID: " + answer.getId() + ")");
+                        entries.add(answer);
+                    }
+                    statusLabel.setText("");
+                    return null;
+                })
+                .exceptionally(ex -> {
+                    statusLabel.setText("Error retrieving data.");
+                    ex.printStackTrace();
+                    return null;
+                });
 
         // Handle selection and load content into edit field
         qaList.setOnMouseClicked(event -> {
-            String selected = qaList.getSelectionModel().getSelectedItem();
-            if (selected != null) {
-                editField.setText(selected.substring(3, selected.lastIndexOf(" (ID: "))); // Extract text
+            int index = qaList.getSelectionModel().getSelectedIndex();
+            if (index >= 0) {
+                Object entry = entries.get(index);
+                editField.setText(entry instanceof Question
+                        ? ((Question) entry).getText() : ((Answer) entry).getAnswerText());
             }
         });
 
         // Handle update action
         updateButton.setOnAction(e -> {
-            String selected = qaList.getSelectionModel().getSelectedItem();
-            if (selected == null) {
+            int index = qaList.getSelectionModel().getSelectedIndex();
+            if (index < 0) {
                 statusLabel.setText("Please select an item to edit.");
                 return;
             }
@@ -78,23 +87,34 @@ public class EditQA {
                 return;
             }
 
-            try {
-                int id = Integer.parseInt(selected.substring(selected.lastIndexOf(" (ID: ") + 5, selected.length() - 1));
-                if (selected.startsWith("Q: ")) {
-                    databaseHelper.updateQuestion(id, newText);
+            // The row is updated once the database has accepted the change
+            updateButton.setDisable(true);
+            Object entry = entries.get(index);
+            CompletableFuture<Void> update = entry instanceof Question
+                    ? databaseHelper.async().updateQuestion(((Question) entry).getId(), newText)
+                    : databaseHelper.async().updateAnswer(((Answer) entry).getId(), newText);
+            update.whenComplete((ignored, ex) -> {
+                updateButton.setDisable(false);
+                if (ex != null) {
+                    statusLabel.setText("Error updating item.");
+                    ex.printStackTrace();
+                    return;
+                }
+                if (entry instanceof Question) {
+                    Question question = (Question) entry;
+                    question.setText(newText);
+                    qaList.getItems().set(index, "Q: " + newText + " (ID: " + question.getId() + ")");
                 } else {
-                    databaseHelper.updateAnswer(id, newText);
+                    Answer answer = (Answer) entry;
+                    answer.setAnswerText(newText);
+                    qaList.getItems().set(index, "A: " + newText + " (ID: " + answer.getId() + ")");
                 }
                 statusLabel.setText("Update successful.");
-                qaList.getItems().set(qaList.getSelectionModel().getSelectedIndex(), selected.substring(0, 3) + newText + " (ID: " + id + ")");
-            } catch (SQLException | NumberFormatException ex) {
-                statusLabel.setText("Error updating item.");
-                ex.printStackTrace();
-            }
+            });
         });
 
         // Back button
-        backButton.setOnAction(e -> new StudentHomePage(databaseHelper).show(primaryStage));
+        backButton.setOnAction(e -> new StudentHomePage(databaseHelper, studentUsername).show(primaryStage));
 
 
         layout.getChildren().addAll(titleLabel, qaList, editField, updateButton, statusLabel, backButton);
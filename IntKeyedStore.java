@@ -0,0 +1,252 @@
+package application;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * IntKeyedStore maps int ids to values, keeping the order the values were added in.
+ *
+ * Values sit in a dense array in insertion order. An open-addressing hash table of plain ints
+ * maps each id to its position in that array, so lookups, updates and deletes take constant time
+ * without boxing the id. Deleting a value leaves a hole in the dense array; the holes are squeezed
+ * out once they outnumber the live values, or when the view is read by position.
+ *
+ * values() is a read-only view of the live values, not a copy. Like ArrayList, the store is not
+ * thread-safe, and iterating the view while the store changes throws ConcurrentModificationException.
+ */
+class IntKeyedStore<V> {
+
+	private static final int MIN_TABLE_SIZE = 16;
+	private static final int MIN_HOLES_TO_COMPACT = 16;
+
+	// Hash table: position in the dense arrays plus one, or 0 for an empty slot
+	private int[] table = new int[MIN_TABLE_SIZE];
+
+	// Dense arrays in insertion order. A null value is a hole left by a delete.
+	private int[] keys = new int[8];
+	private Object[] values = new Object[8];
+	private int end;       // Positions used in the dense arrays, holes included
+	private int size;      // Live values
+	private int modCount;
+
+	private final List<V> view = new View();
+
+	public int size() {
+		return size;
+	}
+
+	public boolean containsKey(int key) {
+		return findSlot(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = findSlot(key);
+		return slot < 0 ? null : (V) values[table[slot] - 1];
+	}
+
+	/**
+	 * Stores a value under its id. A value already stored under the id is replaced in place,
+	 * keeping its position in the order, and returned.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+		int slot = findSlot(key);
+		if (slot >= 0) {
+			int pos = table[slot] - 1;
+			V previous = (V) values[pos];
+			values[pos] = value;
+			return previous;
+		}
+
+		if (end == values.length) {
+			if (end - size >= MIN_HOLES_TO_COMPACT && end - size >= size / 2) {
+				compact();
+			} else {
+				keys = Arrays.copyOf(keys, end * 2);
+				values = Arrays.copyOf(values, end * 2);
+			}
+		}
+		keys[end] = key;
+		values[end] = value;
+		end++;
+		size++;
+		modCount++;
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		} else {
+			insert(key, end);
+		}
+		return null;
+	}
+
+	// Removes and returns the value stored under an id, or null if there is none.
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = findSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+		int pos = table[slot] - 1;
+		V previous = (V) values[pos];
+		values[pos] = null;
+		deleteSlot(slot);
+		size--;
+		modCount++;
+		if (end - size >= MIN_HOLES_TO_COMPACT && end - size > size) {
+			compact();
+		}
+		return previous;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(values, 0, end, null);
+		end = 0;
+		size = 0;
+		modCount++;
+	}
+
+	// A read-only, insertion-ordered view of the values. It reflects later changes.
+	public List<V> values() {
+		return view;
+	}
+
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// Returns the table slot holding the id, or -1.
+	private int findSlot(int key) {
+		int mask = table.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return -1;
+			}
+			if (keys[entry - 1] == key) {
+				return slot;
+			}
+		}
+	}
+
+	private void insert(int key, int entry) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry;
+	}
+
+	// Empties a slot and shifts later entries of the same probe run back, so lookups never
+	// need a tombstone marker in the table.
+	private void deleteSlot(int slot) {
+		int mask = table.length - 1;
+		int hole = slot;
+		for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[table[next] - 1]) & mask;
+			// Move the entry into the hole unless its home slot lies after the hole in its run
+			boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+			if (movable) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[Math.max(MIN_TABLE_SIZE, capacity)];
+		for (int pos = 0; pos < end; pos++) {
+			if (values[pos] != null) {
+				insert(keys[pos], pos + 1);
+			}
+		}
+	}
+
+	// Moves the live values to the front of the dense arrays, closing the holes.
+	private void compact() {
+		int next = 0;
+		for (int pos = 0; pos < end; pos++) {
+			if (values[pos] != null) {
+				keys[next] = keys[pos];
+				values[next] = values[pos];
+				next++;
+			}
+		}
+		Arrays.fill(values, next, end, null);
+		end = next;
+		modCount++;
+		int capacity = MIN_TABLE_SIZE;
+		while (capacity < size * 2) {
+			capacity *= 2;
+		}
+		rehash(capacity);
+	}
+
+
+	// The values() view. Reading by position squeezes out any holes first, so get(i) is O(1).
+	private class View extends AbstractList<V> implements RandomAccess {
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			if (end != size) {
+				compact();
+			}
+			return (V) values[index];
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private int pos = skipHoles(0);
+				private final int expectedModCount = modCount;
+
+				private int skipHoles(int from) {
+					while (from < end && values[from] == null) {
+						from++;
+					}
+					return from;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return pos < end;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public V next() {
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					if (pos >= end) {
+						throw new NoSuchElementException();
+					}
+					V value = (V) values[pos];
+					pos = skipHoles(pos + 1);
+					return value;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * The InvalidationBus class tells other application instances sharing the database (see
+ * DatabaseServer) which cached users, questions and answers have changed, so their caches drop
+ * or reload just those entries instead of serving stale data or flushing everything.
+ *
+ * Changes are recorded in the cache_invalidations table. publish() only queues a change; flush()
+ * writes everything queued in one batch, with duplicates removed. poll() reads the rows other
+ * instances wrote since the last poll, in sequence order, and hands each to the listeners.
+ * DatabaseHelper runs flush and poll on the MaintenanceScheduler every POLL_MILLIS.
+ *
+ * Sequence numbers come from an identity column, so a row from a transaction that committed late
+ * can appear below one already read. Polls therefore restart from the lowest sequence number not
+ * yet seen, and a hole is only given up on (as a rolled-back insert) after GAP_TIMEOUT_MILLIS.
+ */
+public class InvalidationBus {
+
+	public enum Entity { USER, QUESTION, ANSWER }
+
+	/**
+	 * Receives the invalidations published by other instances.
+	 */
+	public interface Listener {
+		void invalidate(Entity entity, String key);
+	}
+
+	static final long POLL_MILLIS = 500;
+	static final long GAP_TIMEOUT_MILLIS = 10_000;
+	static final int MAX_ROWS_PER_POLL = 1000;
+
+	// Identifies this instance's rows, so it does not act on its own invalidations
+	private final String origin = UUID.randomUUID().toString();
+	private final DatabaseHelper databaseHelper;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	// Queued by publish(), written by flush(). Guarded by this.
+	private LinkedHashSet<String> queued = new LinkedHashSet<>();
+
+	// Poll state, only touched by poll(), which runs on one thread at a time
+	private long floor;                                           // Every sequence number up to here is handled
+	private final Set<Long> seenAboveFloor = new HashSet<>();
+	private final Map<Long, Long> gapsSince = new HashMap<>();    // Missing sequence number -> when first noticed
+
+	private long published;
+	private long received;
+
+	/**
+	 * Creates a bus that starts from the newest row in the table: there is nothing to invalidate
+	 * in caches that have only just been created.
+	 */
+	public InvalidationBus(DatabaseHelper databaseHelper) throws SQLException {
+		this.databaseHelper = databaseHelper;
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_MAX_INVALIDATION_SEQ);
+		     ResultSet rs = pstmt.executeQuery()) {
+			floor = rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	// Queues an invalidation for the other instances. It is written on the next flush.
+	public synchronized void publish(Entity entity, String key) {
+		queued.add(entity.name() + ":" + key);
+	}
+
+	public void publish(Entity entity, int id) {
+		publish(entity, Integer.toString(id));
+	}
+
+	// Writes the queued invalidations in one batch. Returns how many were written.
+	public int flush() throws SQLException {
+		LinkedHashSet<String> batch;
+		synchronized (this) {
+			if (queued.isEmpty()) {
+				return 0;
+			}
+			batch = queued;
+			queued = new LinkedHashSet<>();
+		}
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		try (Connection connection = databaseHelper.borrowConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_INSERT_INVALIDATION)) {
+				for (String item : batch) {
+					int colon = item.indexOf(':');
+					pstmt.setString(1, item.substring(0, colon));
+					pstmt.setString(2, item.substring(colon + 1));
+					pstmt.setString(3, origin);
+					pstmt.setTimestamp(4, now);
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				synchronized (this) {
+					// Put them back in front of what was queued since, to try again next time
+					batch.addAll(queued);
+					queued = batch;
+				}
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		synchronized (this) {
+			published += batch.size();
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Reads the invalidations other instances wrote since the last poll and passes them to the
+	 * listeners in sequence order. Returns how many were delivered.
+	 */
+	public synchronized int poll() throws SQLException {
+		List<Object[]> rows = new ArrayList<>();
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_INVALIDATIONS_AFTER)) {
+			pstmt.setLong(1, floor);
+			pstmt.setInt(2, MAX_ROWS_PER_POLL);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rows.add(new Object[] {rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)});
+				}
+			}
+		}
+
+		int delivered = 0;
+		long now = System.currentTimeMillis();
+		long highest = floor;
+		for (Object[] row : rows) {
+			long seq = (Long) row[0];
+			highest = Math.max(highest, seq);
+			if (!seenAboveFloor.add(seq)) {
+				continue; // Delivered by an earlier poll that stopped below a gap
+			}
+			gapsSince.remove(seq);
+			if (!origin.equals(row[3])) {
+				Entity entity;
+				try {
+					entity = Entity.valueOf((String) row[1]);
+				} catch (IllegalArgumentException e) {
+					continue; // Written by a newer version of the application
+				}
+				for (Listener listener : listeners) {
+					listener.invalidate(entity, (String) row[2]);
+				}
+				delivered++;
+			}
+		}
+		// Note the holes below the highest row read, then move the floor up past everything handled
+		for (long seq = floor + 1; seq < highest; seq++) {
+			if (!seenAboveFloor.contains(seq)) {
+				gapsSince.putIfAbsent(seq, now);
+			}
+		}
+		while (true) {
+			long next = floor + 1;
+			if (seenAboveFloor.remove(next)) {
+				floor = next;
+			} else if (gapsSince.containsKey(next) && now - gapsSince.get(next) >= GAP_TIMEOUT_MILLIS) {
+				gapsSince.remove(next); // Never committed; most likely a rolled-back insert
+				floor = next;
+			} else {
+				break;
+			}
+		}
+		received += delivered;
+		return delivered;
+	}
+
+	// Flushes, then polls. Returns the number of rows written and read.
+	public int exchange() throws SQLException {
+		return flush() + poll();
+	}
+
+	public synchronized long getPublishedCount() {
+		return published;
+	}
+
+	public synchronized long getReceivedCount() {
+		return received;
+	}
+
+	// Sequence numbers at or below this have all been handled.
+	synchronized long getFloor() {
+		return floor;
+	}
+}
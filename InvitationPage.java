@@ -1,17 +1,30 @@
 package application;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import databasePart1.AsyncDatabaseHelper;
 import databasePart1.DatabaseHelper;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 // Make sure to import your User class, e.g.:
 // import models.User;
 
 /**
  * InvitationPage class represents the page where an admin can generate an invitation code.
- * The invitation code is displayed upon clicking a button.
+ * The invitation code is displayed upon clicking a button. A whole course's worth of codes can
+ * also be generated at once and exported to a file.
  */
 public class InvitationPage {
 
@@ -40,7 +53,70 @@ public class InvitationPage {
         showCodeButton.setOnAction(a -> {
             // Generate the invitation code using the databaseHelper and set it to the label
             String invitationCode = databaseHelper.generateInvitationCode();
-            inviteCodeLabel.setText(invitationCode);
+            inviteCodeLabel.setText(invitationCode != null ? invitationCode : "The code could not be saved. Please try again.");
+        });
+
+        // Batch generation: how many codes and how long they stay valid
+        Spinner<Integer> countSpinner = new Spinner<>(1, DatabaseHelper.INVITATION_MAX_BATCH, 100);
+        countSpinner.setEditable(true);
+        countSpinner.setPrefWidth(100);
+        Spinner<Integer> validDaysSpinner = new Spinner<>(1, 365, 14);
+        validDaysSpinner.setEditable(true);
+        validDaysSpinner.setPrefWidth(80);
+        Button batchButton = new Button("Generate Batch");
+        HBox batchRow = new HBox(10, new Label("Codes:"), countSpinner, new Label("Valid for (days):"),
+                validDaysSpinner, batchButton);
+        batchRow.setStyle("-fx-alignment: center;");
+
+        // The batch is listed one code per line so it can be copied, or exported to a file
+        TextArea batchCodesArea = new TextArea();
+        batchCodesArea.setEditable(false);
+        batchCodesArea.setPrefRowCount(6);
+        batchCodesArea.setMaxWidth(400);
+        Button exportButton = new Button("Export...");
+        exportButton.setDisable(true);
+        Label batchStatusLabel = new Label("");
+        List<String> batchCodes = new ArrayList<>();
+
+        batchButton.setOnAction(a -> {
+            int count = countSpinner.getValue();
+            long validityMillis = validDaysSpinner.getValue() * 24L * 60 * 60 * 1000;
+            batchButton.setDisable(true);
+            batchStatusLabel.setText("Generating " + count + " codes...");
+            // The batch is generated and inserted off the JavaFX thread
+            databaseHelper.async().execute(db -> db.generateInvitationCodes(count, DatabaseHelper.INVITATION_ALPHABET,
+                    DatabaseHelper.INVITATION_CODE_LENGTH, validityMillis)).whenComplete((codes, ex) -> {
+                batchButton.setDisable(false);
+                if (ex != null) {
+                    batchStatusLabel.setText("Error: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                    return;
+                }
+                batchCodes.clear();
+                batchCodes.addAll(codes);
+                batchCodesArea.setText(String.join("\n", codes));
+                exportButton.setDisable(false);
+                batchStatusLabel.setText(codes.size() + " codes generated, valid for " + validDaysSpinner.getValue() + " days.");
+            });
+        });
+
+        exportButton.setOnAction(a -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Export Invitation Codes");
+            chooser.setInitialFileName("invitation-codes.csv");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+            File file = chooser.showSaveDialog(primaryStage);
+            if (file == null) {
+                return;
+            }
+            List<String> lines = new ArrayList<>();
+            lines.add("code");
+            lines.addAll(batchCodes);
+            try {
+                Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+                batchStatusLabel.setText("Exported " + batchCodes.size() + " codes to " + file.getName() + ".");
+            } catch (IOException e) {
+                batchStatusLabel.setText("Export failed: " + e.getMessage());
+            }
         });
         
         // Back button to navigate to the WelcomeLoginPage
@@ -50,7 +126,8 @@ public class InvitationPage {
             welcomePage.show(primaryStage, user);
         });
         
-        layout.getChildren().addAll(userLabel, showCodeButton, inviteCodeLabel, backButton);
+        layout.getChildren().addAll(userLabel, showCodeButton, inviteCodeLabel, batchRow, batchCodesArea,
+                exportButton, batchStatusLabel, backButton);
         Scene inviteScene = new Scene(layout, 800, 400);
         
         // Set the scene to primary stage
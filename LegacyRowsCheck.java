@@ -0,0 +1,115 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import application.Answer;
+import application.Question;
+
+/**
+ * Legacy Rows Check
+ * This mainline checks that questions and answers written before the entity checks existed
+ * (whitespace-only text or author) do not break reading the tables. Every read path maps rows
+ * through the validating constructors, so each one must skip such a row instead of failing.
+ *
+ * It runs against the IN_MEMORY storage profile, with the invalid rows inserted directly.
+ */
+public class LegacyRowsCheck {
+
+    static final String AUTHOR = "legacy";
+
+    /**
+     * Inserts two valid questions with one valid answer each, plus a question with blank text,
+     * an answer with blank text and an answer with a blank author.
+     */
+    static void seed(DatabaseHelper db) throws SQLException {
+        try (Connection connection = db.borrowConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO questions (id, text, createdBy) VALUES (1, 'A valid question', '" + AUTHOR + "')");
+            statement.execute("INSERT INTO questions (id, text, createdBy) VALUES (2, '   ', '" + AUTHOR + "')");
+            statement.execute("INSERT INTO questions (id, text, createdBy) VALUES (3, 'Another valid question', '" + AUTHOR + "')");
+            statement.execute("INSERT INTO answers (id, question_id, text, answeredBy) VALUES (1, 1, 'A valid answer', '" + AUTHOR + "')");
+            statement.execute("INSERT INTO answers (id, question_id, text, answeredBy) VALUES (2, 1, ' ', '" + AUTHOR + "')");
+            statement.execute("INSERT INTO answers (id, question_id, text, answeredBy) VALUES (3, 3, 'Blank author', '  ')");
+            statement.execute("INSERT INTO answers (id, question_id, text, answeredBy) VALUES (4, 3, 'Another valid answer', '" + AUTHOR + "')");
+        }
+    }
+
+    /**
+     * Whole-table and per-user lists skip the invalid rows.
+     */
+    public static void testLists(DatabaseHelper db) throws SQLException {
+        check(db.getAllQuestions().size() == 2, "getAllQuestions skips the blank question");
+        check(db.getAllAnswers().size() == 2, "getAllAnswers skips both invalid answers");
+        check(db.getQuestionsByUser(AUTHOR).size() == 2, "getQuestionsByUser skips the blank question");
+        check(db.getAnswersByUser(AUTHOR).size() == 2, "getAnswersByUser skips the blank answer");
+        System.out.println("testLists passed.");
+    }
+
+    /**
+     * Paging forward and back reaches every valid row, with pages that start or end on a
+     * skipped row.
+     */
+    public static void testPages(DatabaseHelper db) throws SQLException {
+        List<Integer> forward = new ArrayList<>();
+        PageCursor cursor = PageCursor.FIRST;
+        while (cursor != null) {
+            Page<Question> page = db.getQuestionsPage(cursor, 1);
+            page.getItems().forEach(q -> forward.add(q.getId()));
+            cursor = page.next();
+        }
+        check(forward.equals(List.of(1, 3)), "forward pages hold questions 1 and 3, got " + forward);
+
+        List<Integer> backward = new ArrayList<>();
+        cursor = PageCursor.LAST;
+        while (cursor != null) {
+            Page<Answer> page = db.getAnswersPage(cursor, 1);
+            page.getItems().forEach(a -> backward.add(a.getId()));
+            cursor = page.previous();
+        }
+        check(backward.equals(List.of(4, 1)), "backward pages hold answers 4 and 1, got " + backward);
+        System.out.println("testPages passed.");
+    }
+
+    /**
+     * Streams and callbacks skip the invalid rows, and so does building the search index.
+     */
+    public static void testStreamsAndSearch(DatabaseHelper db) throws SQLException {
+        try (Stream<Question> questions = db.streamQuestions(1)) {
+            check(questions.count() == 2, "streamQuestions skips the blank question");
+        }
+        int[] answers = new int[1];
+        db.forEachAnswer(1, a -> answers[0]++);
+        check(answers[0] == 2, "forEachAnswer skips both invalid answers");
+        check(db.search("valid", 10).size() == 4, "the search index builds from the valid rows");
+        System.out.println("testStreamsAndSearch passed.");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed: " + what);
+        }
+    }
+
+    /**
+     * Mainline to run all checks.
+     */
+    public static void main(String[] args) throws Exception {
+        DatabaseHelper db = new DatabaseHelper();
+        db.setStorageProfile(StorageProfile.IN_MEMORY);
+        db.connectToDatabase();
+        try {
+            seed(db);
+            testLists(db);
+            testPages(db);
+            testStreamsAndSearch(db);
+        } finally {
+            db.closeConnection();
+        }
+        System.out.println("Legacy rows check completed.");
+    }
+}
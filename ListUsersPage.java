@@ -6,7 +6,6 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 //import list, database, and java.util.Optional
-import java.util.List;
 import java.util.Optional;
 import databasePart1.DatabaseHelper;
 
@@ -46,13 +45,20 @@ public class ListUsersPage {
 	    // button to display list of users //
 	    Button listUsersButton = new Button("List Users and Roles");
 	    listUsersButton.setOnAction(event -> {
-	    		List<String[]> usersAndRoles = databaseHelper.getAllUsernamesAndRoles();
-	    		StringBuilder displayText = new StringBuilder();
-	    		for (String[] user : usersAndRoles) { //call usersAndRoles from database and add info to string//
-	    			displayText.append("Username: ").append(user[0]).append(" | ").append("Role: ").append(user[1])
-	    			.append(" | ").append("Name: ----").append(" | ").append("Email: --------").append("\n");
-	    		}
-	    		listText.setText(displayText.toString());
+	    		listText.setText("Loading...");
+	    		databaseHelper.async().getAllUsernamesAndRoles().whenComplete((usersAndRoles, ex) -> {
+	    			if (ex != null) {
+	    				listText.setText("Error loading users.");
+	    				ex.printStackTrace();
+	    				return;
+	    			}
+	    			StringBuilder displayText = new StringBuilder();
+	    			for (User user : usersAndRoles) { //call usersAndRoles from database and add info to string//
+	    				displayText.append("Username: ").append(user.getUserName()).append(" | ").append("Role: ").append(user.getRole())
+	    				.append(" | ").append("Name: ----").append(" | ").append("Email: --------").append("\n");
+	    			}
+	    			listText.setText(displayText.toString());
+	    		});
 	    });
 	    //input field for deleting users(type username of account you want to delete)
 	    TextField deleteUserField = new TextField();
@@ -65,26 +71,43 @@ public class ListUsersPage {
 	        if (usernameToDelete.isEmpty()) {
 	            showError("Please enter a username to delete."); //error displayed if deleteUserField is left empty//
 	            return; 
-	        } if (!databaseHelper.doesUserExist(usernameToDelete)) {
-                showError("User does not exist.");
-                return;
-            } if (databaseHelper.getUserRole(usernameToDelete).equals("admin")) { //error to display if admin tries to delete their own account
-	            showError("Cannot remove own admin access"); 
-	            return;
 	        }
-	        // add alert to confirm user deletion
-	        Alert confirmAlert = new Alert(Alert.AlertType.CONFIRMATION);
-            confirmAlert.setTitle("Confirm Deletion");
-            confirmAlert.setHeaderText("Are you sure you want to delete this user?");
-            confirmAlert.setContentText("User: " + usernameToDelete);
-            Optional<ButtonType> result = confirmAlert.showAndWait();
-            if (result.isPresent() && result.get() == ButtonType.OK) {
-                databaseHelper.deleteUser(usernameToDelete);     // User confirmed deletion, display success message//
-                showSuccess("User deleted successfully.");
-                deleteUserField.clear(); // Clear input field after deletion
-            } else {
-                showSuccess("User deletion canceled.");   //user cancelled deletion//
-            }
+	        // The lookups and the delete run off the JavaFX thread; the button is off until they finish
+	        deleteUsersButton.setDisable(true);
+	        databaseHelper.async().execute(db -> {
+	        	if (!db.doesUserExist(usernameToDelete)) {
+	        		return "User does not exist.";
+	        	} if ("admin".equals(db.getUserRole(usernameToDelete))) { //error to display if admin tries to delete their own account
+	        		return "Cannot remove own admin access";
+	        	}
+	        	return null;
+	        }).whenComplete((problem, ex) -> {
+	        	if (ex != null || problem != null) {
+	        		deleteUsersButton.setDisable(false);
+	        		showError(ex != null ? "Error looking up user." : problem);
+	        		return;
+	        	}
+	        	// add alert to confirm user deletion
+	        	Alert confirmAlert = new Alert(Alert.AlertType.CONFIRMATION);
+	        	confirmAlert.setTitle("Confirm Deletion");
+	        	confirmAlert.setHeaderText("Are you sure you want to delete this user?");
+	        	confirmAlert.setContentText("User: " + usernameToDelete);
+	        	Optional<ButtonType> result = confirmAlert.showAndWait();
+	        	if (result.isPresent() && result.get() == ButtonType.OK) {
+	        		databaseHelper.async().deleteUser(usernameToDelete).whenComplete((deleted, error) -> {
+	        			deleteUsersButton.setDisable(false);
+	        			if (error == null && deleted) {
+	        				showSuccess("User deleted successfully.");     // User confirmed deletion, display success message//
+	        				deleteUserField.clear(); // Clear input field after deletion
+	        			} else {
+	        				showError("Error deleting user.");
+	        			}
+	        		});
+	        	} else {
+	        		deleteUsersButton.setDisable(false);
+	        		showSuccess("User deletion canceled.");   //user cancelled deletion//
+	        	}
+	        });
 	    });
 	    
 		//Div ee
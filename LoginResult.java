@@ -0,0 +1,55 @@
+package databasePart1;
+
+
+/**
+ * The LoginResult class is the outcome of checking a userName and password. On success it
+ * carries the user's role, so the caller does not need a second query to find where to send them.
+ */
+public class LoginResult {
+
+	public enum Status {
+		SUCCESS,
+		UNKNOWN_USER,
+		WRONG_PASSWORD
+	}
+
+	private static final LoginResult UNKNOWN_USER = new LoginResult(Status.UNKNOWN_USER, null);
+	private static final LoginResult WRONG_PASSWORD = new LoginResult(Status.WRONG_PASSWORD, null);
+
+	private final Status status;
+	private final String role;     // null unless the login succeeded
+
+	private LoginResult(Status status, String role) {
+		this.status = status;
+		this.role = role;
+	}
+
+	static LoginResult success(String role) {
+		return new LoginResult(Status.SUCCESS, role);
+	}
+
+	static LoginResult unknownUser() {
+		return UNKNOWN_USER;
+	}
+
+	static LoginResult wrongPassword() {
+		return WRONG_PASSWORD;
+	}
+
+	public boolean isSuccess() {
+		return status == Status.SUCCESS;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getRole() {
+		return role;
+	}
+
+	@Override
+	public String toString() {
+		return role == null ? status.name() : status + " (" + role + ")";
+	}
+}
@@ -0,0 +1,209 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The MaintenanceScheduler class runs periodic housekeeping jobs, such as purging expired rows,
+ * on one background thread so they never compete with each other for connections.
+ *
+ * Each run is scheduled a jittered period after the previous one finished, so jobs with the same
+ * period drift apart instead of all firing at once, and a slow run simply delays the next one.
+ * A job that throws is logged and scheduled again as usual. Run counts, rows touched, run times
+ * and the last error are kept per job and reported by getStats().
+ *
+ * batchedDelete() builds the usual purge job: it deletes in small batches with a pause between
+ * them, so a large backlog of stale rows is worked off over a few runs without holding locks
+ * for long or starving the pages of connections.
+ */
+public class MaintenanceScheduler {
+
+	/**
+	 * One housekeeping task. Returns how many rows or items it handled, for the stats.
+	 */
+	public interface Job {
+		int run() throws Exception;
+	}
+
+	/**
+	 * A snapshot of one job's counters.
+	 */
+	public static final class JobStats {
+		public final String name;
+		public final long periodMillis;
+		public final long runs;
+		public final long failures;
+		public final long rows;              // Total rows or items handled
+		public final long lastRunMicros;
+		public final long averageRunMicros;
+		public final long maxRunMicros;
+		public final long lastRunAt;         // Epoch millis, or 0 before the first run
+		public final String lastError;       // null if the last run succeeded
+
+		JobStats(String name, long periodMillis, long runs, long failures, long rows, long lastRunMicros,
+				long averageRunMicros, long maxRunMicros, long lastRunAt, String lastError) {
+			this.name = name;
+			this.periodMillis = periodMillis;
+			this.runs = runs;
+			this.failures = failures;
+			this.rows = rows;
+			this.lastRunMicros = lastRunMicros;
+			this.averageRunMicros = averageRunMicros;
+			this.maxRunMicros = maxRunMicros;
+			this.lastRunAt = lastRunAt;
+			this.lastError = lastError;
+		}
+
+		@Override
+		public String toString() {
+			return "JobStats [" + name + ", runs=" + runs + ", failures=" + failures + ", rows=" + rows
+					+ ", lastRunMicros=" + lastRunMicros + ", avgRunMicros=" + averageRunMicros
+					+ ", maxRunMicros=" + maxRunMicros + (lastError == null ? "" : ", lastError=" + lastError) + "]";
+		}
+	}
+
+	private final ScheduledExecutorService executor;
+	private final List<ScheduledJob> jobs = new CopyOnWriteArrayList<>();
+
+	public MaintenanceScheduler() {
+		this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Runs a job about every periodMillis. Each delay, including the first, is moved by a random
+	 * amount of up to jitter times the period either way (0 for no jitter, at most 1).
+	 */
+	public void schedule(String name, long periodMillis, double jitter, Job job) {
+		if (periodMillis < 1 || jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("Period must be positive and jitter between 0 and 1.");
+		}
+		ScheduledJob scheduled = new ScheduledJob(name, periodMillis, jitter, job);
+		jobs.add(scheduled);
+		scheduled.scheduleNext();
+	}
+
+	public List<JobStats> getStats() {
+		List<JobStats> stats = new ArrayList<>();
+		for (ScheduledJob job : jobs) {
+			stats.add(job.snapshot());
+		}
+		return stats;
+	}
+
+	// Stops the jobs. A run in progress is interrupted.
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Builds a job that runs a DELETE in batches until it removes fewer rows than a full batch,
+	 * or maxBatches have run. The statement must take the current time as its first parameter and
+	 * the batch size as its second, as in "... WHERE deadline < ? FETCH FIRST ? ROWS ONLY".
+	 */
+	public static Job batchedDelete(DatabaseHelper databaseHelper, String sql, int batchSize, int maxBatches,
+			long pauseMillis) {
+		return () -> {
+			int total = 0;
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+			for (int batch = 0; batch < maxBatches; batch++) {
+				int deleted;
+				try (Connection connection = databaseHelper.borrowConnection();
+				     PreparedStatement pstmt = connection.prepareStatement(sql)) {
+					pstmt.setTimestamp(1, now);
+					pstmt.setInt(2, batchSize);
+					deleted = pstmt.executeUpdate();
+				}
+				total += deleted;
+				if (deleted < batchSize) {
+					break;
+				}
+				Thread.sleep(pauseMillis); // Leave room for the pages between batches
+			}
+			return total;
+		};
+	}
+
+
+	// A registered job and its counters. Only the maintenance thread runs it; the counters are
+	// read by getStats() from other threads, so they are guarded by this.
+	private class ScheduledJob implements Runnable {
+		final String name;
+		final long periodMillis;
+		final double jitter;
+		final Job job;
+
+		private long runs;
+		private long failures;
+		private long rows;
+		private long lastRunNanos;
+		private long totalRunNanos;
+		private long maxRunNanos;
+		private long lastRunAt;
+		private String lastError;
+
+		ScheduledJob(String name, long periodMillis, double jitter, Job job) {
+			this.name = name;
+			this.periodMillis = periodMillis;
+			this.jitter = jitter;
+			this.job = job;
+		}
+
+		void scheduleNext() {
+			double offset = jitter == 0 ? 0 : jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+			long delay = Math.max(1, Math.round(periodMillis * (1 + offset)));
+			try {
+				executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// Shut down; the job simply stops
+			}
+		}
+
+		@Override
+		public void run() {
+			long started = System.nanoTime();
+			int handled = 0;
+			String error = null;
+			try {
+				handled = job.run();
+			} catch (InterruptedException e) {
+				return; // Shutting down
+			} catch (Exception e) {
+				error = e.toString();
+				System.err.println("Maintenance job " + name + " failed: " + e);
+			}
+			long ran = System.nanoTime() - started;
+			synchronized (this) {
+				runs++;
+				if (error != null) {
+					failures++;
+				}
+				rows += handled;
+				lastRunNanos = ran;
+				totalRunNanos += ran;
+				maxRunNanos = Math.max(maxRunNanos, ran);
+				lastRunAt = System.currentTimeMillis();
+				lastError = error;
+			}
+			scheduleNext();
+		}
+
+		synchronized JobStats snapshot() {
+			return new JobStats(name, periodMillis, runs, failures, rows, lastRunNanos / 1000,
+					runs == 0 ? 0 : totalRunNanos / runs / 1000, maxRunNanos / 1000, lastRunAt, lastError);
+		}
+	}
+}
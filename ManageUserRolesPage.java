@@ -23,22 +23,23 @@ public class ManageUserRolesPage {
         Label titleLabel = new Label("Manage User Roles");
         titleLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
 
-        List<String[]> usersAndRoles = databaseHelper.getAllUsernamesAndRoles();
-        for (String[] user : usersAndRoles) {
+        List<User> usersAndRoles = databaseHelper.getAllUsernamesAndRoles();
+        for (User user : usersAndRoles) {
             HBox userBox = new HBox(10);
-            Label userNameLabel = new Label(user[0] + " - " + user[1]);
+            Label userNameLabel = new Label(user.getUserName() + " - " + user.getRole());
             ComboBox<String> roleComboBox = new ComboBox<>();
             roleComboBox.getItems().addAll("admin", "student", "instructor", "staff", "reviewer");
-            roleComboBox.setValue(user[1]);
+            roleComboBox.setValue(user.getRole());
 
             Button updateButton = new Button("Update Role");
             updateButton.setOnAction(e -> {
                 String newRole = roleComboBox.getValue();
-                if (user[0].equals("admin") && !newRole.equals("admin")) {
+                if (user.getUserName().equals("admin") && !newRole.equals("admin")) {
                     showAlert("Error", "You cannot remove the admin role from your own account.");
                 } else if (newRole.equals("admin") || databaseHelper.countAdmins() > 1) {
-                    databaseHelper.updateUserRole(user[0], newRole);
-                    userNameLabel.setText(user[0] + " - " + newRole);
+                    databaseHelper.updateUserRole(user.getUserName(), newRole);
+                    user.setRole(newRole);
+                    userNameLabel.setText(user.getUserName() + " - " + newRole);
                     showAlert("Success", "Role updated successfully.");
                 } else {
                     showAlert("Error", "There must always be at least one admin user.");
@@ -65,4 +66,4 @@ public class ManageUserRolesPage {
         alert.setContentText(message);
         alert.showAndWait();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,328 @@
+package databasePart1;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The OtpStore class keeps the one-time passwords issued for password resets in memory.
+ *
+ * Each userName has at most one live OTP; issuing a new one replaces the old. An OTP expires
+ * TTL after it was issued and can be used once: consume() removes it with a compare-and-remove on
+ * a ConcurrentHashMap, so two logins racing with the same code cannot both succeed, and checking
+ * a code never takes a lock or touches the database.
+ *
+ * Expired OTPs are swept by a hashed timer wheel: every OTP is dropped into the bucket for the
+ * tick it expires on, and each tick only looks at its own bucket rather than every stored OTP.
+ * The owner calls tick() every TICK_MILLIS (DatabaseHelper runs it on the MaintenanceScheduler);
+ * an expired OTP that has not been swept yet is still refused by consume().
+ *
+ * When persistence is on, every change is also written to the user_otp table on the store's
+ * background thread, and live OTPs are loaded back on startup, so a pending reset survives a
+ * restart of the application.
+ *
+ * A shared store is for instances sharing one database through DatabaseServer, where an OTP issued
+ * by one instance has to work on any other. It keeps nothing in memory: issue() writes the OTP
+ * before returning, and consume() is a single DELETE that only succeeds for a live, matching
+ * code, so two instances racing with the same code cannot both succeed either.
+ */
+public class OtpStore {
+
+	static final long TICK_MILLIS = 1000;
+	static final int WHEEL_SIZE = 512;     // Buckets; one turn of the wheel covers about 8.5 minutes
+	private static final int OTP_DIGITS = 6;
+	private static final int OTP_RANGE = 1_000_000;
+
+	// One issued OTP. Identity matters: removal only succeeds for the exact instance still stored.
+	private static final class Otp {
+		final String userName;
+		final String code;
+		final long expiresAt;    // Epoch millis
+
+		Otp(String userName, String code, long expiresAt) {
+			this.userName = userName;
+			this.code = code;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final DatabaseHelper databaseHelper;   // null when OTPs are kept in memory only
+	private final long ttlMillis;
+	private final boolean shared;                  // The database, not this store, holds the OTPs
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentHashMap<String, Otp> otps = new ConcurrentHashMap<>();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final ConcurrentLinkedQueue<Otp>[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+	private long lastTick;   // Last tick swept; only touched by tick(), which runs on one thread at a time
+
+	// Writes changes to the database, in the order they were made
+	private final ExecutorService background;
+
+	/**
+	 * Creates a store whose OTPs live for ttlMillis. Pass a DatabaseHelper to persist them to
+	 * the user_otp table, or null to keep them in memory only.
+	 */
+	public OtpStore(DatabaseHelper databaseHelper, long ttlMillis) {
+		this(databaseHelper, ttlMillis, false);
+	}
+
+	/**
+	 * Creates a store whose OTPs live for ttlMillis. A shared store reads and writes every OTP
+	 * through the user_otp table of the given DatabaseHelper, which must not be null.
+	 */
+	public OtpStore(DatabaseHelper databaseHelper, long ttlMillis, boolean shared) {
+		if (shared && databaseHelper == null) {
+			throw new IllegalArgumentException("A shared OTP store needs a database.");
+		}
+		this.databaseHelper = databaseHelper;
+		this.ttlMillis = ttlMillis;
+		this.shared = shared;
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<>();
+		}
+		lastTick = System.currentTimeMillis() / TICK_MILLIS;
+		if (databaseHelper != null && !shared) {
+			load();
+		}
+		this.background = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "otp-store");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// Issues a new random OTP for a user, replacing any OTP they already had.
+	public String issue(String userName) {
+		String code = String.format("%0" + OTP_DIGITS + "d", random.nextInt(OTP_RANGE));
+		Otp otp = new Otp(userName, code, System.currentTimeMillis() + ttlMillis);
+		if (shared) {
+			save(otp); // Written before the user can try it on another instance
+			return code;
+		}
+		otps.put(userName, otp);
+		schedule(otp);
+		persist(() -> save(otp));
+		return code;
+	}
+
+	/**
+	 * Uses up a user's OTP. Returns true only if the code matches a live OTP and this call is the
+	 * one that removed it.
+	 */
+	public boolean consume(String userName, String code) {
+		if (shared) {
+			return code != null && consumeStored(userName, code);
+		}
+		Otp otp = otps.get(userName);
+		if (otp == null || code == null) {
+			return false;
+		}
+		if (otp.expiresAt <= System.currentTimeMillis()) {
+			expire(otp);
+			return false;
+		}
+		// Compare in constant time so the response time does not hint at how much matched
+		if (!MessageDigest.isEqual(otp.code.getBytes(StandardCharsets.UTF_8), code.getBytes(StandardCharsets.UTF_8))) {
+			return false;
+		}
+		if (!otps.remove(userName, otp)) {
+			return false; // Someone else used or replaced it first
+		}
+		persist(() -> delete(otp));
+		return true;
+	}
+
+	// True when the user has an OTP that has not expired or been used.
+	public boolean has(String userName) {
+		if (shared) {
+			return hasStored(userName);
+		}
+		Otp otp = otps.get(userName);
+		return otp != null && otp.expiresAt > System.currentTimeMillis();
+	}
+
+	// Drops a user's OTP, if they have one.
+	public void clear(String userName) {
+		if (shared) {
+			deleteStored(userName);
+			return;
+		}
+		Otp otp = otps.remove(userName);
+		if (otp != null) {
+			persist(() -> delete(otp));
+		}
+	}
+
+	// OTPs currently stored, including any that have expired but not yet been swept. Always 0 when shared.
+	public int size() {
+		return otps.size();
+	}
+
+	// Sweeps every wheel bucket whose tick has passed since the last sweep. Returns how many expired.
+	public synchronized int tick() {
+		int expired = 0;
+		long now = System.currentTimeMillis();
+		long currentTick = now / TICK_MILLIS;
+		// After a long pause, one full turn visits every bucket
+		long from = Math.max(lastTick + 1, currentTick - WHEEL_SIZE + 1);
+		for (long t = from; t <= currentTick; t++) {
+			Iterator<Otp> bucket = wheel[(int) (t & (WHEEL_SIZE - 1))].iterator();
+			while (bucket.hasNext()) {
+				Otp otp = bucket.next();
+				if (otps.get(otp.userName) != otp) {
+					bucket.remove(); // Already used, cleared or replaced
+				} else if (otp.expiresAt <= now) {
+					bucket.remove();
+					expire(otp);
+					expired++;
+				}
+				// Otherwise it expires on a later turn of the wheel
+			}
+		}
+		lastTick = currentTick;
+		return expired;
+	}
+
+	// Stops the background thread after writing any changes still waiting for the database.
+	public void close() {
+		background.shutdown();
+		try {
+			background.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private void schedule(Otp otp) {
+		wheel[(int) ((otp.expiresAt / TICK_MILLIS) & (WHEEL_SIZE - 1))].add(otp);
+	}
+
+	private void expire(Otp otp) {
+		if (otps.remove(otp.userName, otp)) {
+			persist(() -> delete(otp));
+		}
+	}
+
+	// Runs a database write on the background thread. Writes are skipped when persistence is off.
+	private void persist(Runnable write) {
+		if (databaseHelper == null) {
+			return;
+		}
+		try {
+			background.execute(write);
+		} catch (RejectedExecutionException e) {
+			// Closing; the OTP stays in memory only
+		}
+	}
+
+	// Loads the OTPs that were live when the application last stopped.
+	private void load() {
+		String query = DatabaseHelper.SQL_LIVE_OTPS;
+		long now = System.currentTimeMillis();
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(query)) {
+			pstmt.setTimestamp(1, new Timestamp(now));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					Otp otp = new Otp(rs.getString("userName"), rs.getString("otp"),
+							rs.getTimestamp("expiresAt").getTime());
+					Otp previous = otps.get(otp.userName);
+					if (previous == null || previous.expiresAt < otp.expiresAt) {
+						otps.put(otp.userName, otp);
+						schedule(otp);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Replaces the user's stored OTP with this one.
+	private void save(Otp otp) {
+		try (Connection connection = databaseHelper.borrowConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement delete = connection.prepareStatement(DatabaseHelper.SQL_DELETE_OTPS);
+			     PreparedStatement insert = connection.prepareStatement(DatabaseHelper.SQL_INSERT_OTP)) {
+				delete.setString(1, otp.userName);
+				delete.executeUpdate();
+				insert.setString(1, otp.userName);
+				insert.setString(2, otp.code);
+				insert.setTimestamp(3, new Timestamp(otp.expiresAt));
+				insert.executeUpdate();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void delete(Otp otp) {
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_DELETE_OTP)) {
+			pstmt.setString(1, otp.userName);
+			pstmt.setString(2, otp.code);
+			pstmt.executeUpdate();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Deletes the user's OTP if it matches and is live. Only the caller that deleted it gets true.
+	private boolean consumeStored(String userName, String code) {
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_CONSUME_OTP)) {
+			pstmt.setString(1, userName);
+			pstmt.setString(2, code);
+			pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+			return pstmt.executeUpdate() == 1;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private boolean hasStored(String userName) {
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_HAS_OTP)) {
+			pstmt.setString(1, userName);
+			pstmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				return rs.next();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void deleteStored(String userName) {
+		try (Connection connection = databaseHelper.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_DELETE_OTPS)) {
+			pstmt.setString(1, userName);
+			pstmt.executeUpdate();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
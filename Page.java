@@ -0,0 +1,49 @@
+package databasePart1;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The Page class holds one page of rows from a keyset-paginated query, together with the
+ * cursors needed to fetch the neighbouring pages.
+ */
+public class Page<T> {
+
+	private final List<T> items;
+	private final PageCursor next;       // null when this is the last page
+	private final PageCursor previous;   // null when this is the first page
+	private final long estimatedTotal;   // Rows in the whole listing, or -1 when unknown
+
+	Page(List<T> items, PageCursor next, PageCursor previous, long estimatedTotal) {
+		this.items = Collections.unmodifiableList(items);
+		this.next = next;
+		this.previous = previous;
+		this.estimatedTotal = estimatedTotal;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	public boolean hasPrevious() {
+		return previous != null;
+	}
+
+	public PageCursor next() {
+		return next;
+	}
+
+	public PageCursor previous() {
+		return previous;
+	}
+
+	// Rows in the whole listing (not just this page), or -1 when the query has no cheap count.
+	public long getEstimatedTotal() {
+		return estimatedTotal;
+	}
+}
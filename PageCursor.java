@@ -0,0 +1,68 @@
+package databasePart1;
+
+import java.sql.Timestamp;
+
+
+/**
+ * The PageCursor class marks a position in a list ordered by (createdAt, id) and the direction
+ * to read from it. Pages are fetched by seeking to the cursor through the index (keyset
+ * pagination), so reading page 500 costs the same as reading page 1.
+ */
+public class PageCursor {
+
+	// Start of the list, reading forward
+	public static final PageCursor FIRST = new PageCursor(true, null, 0, false);
+	// End of the list, reading backward
+	public static final PageCursor LAST = new PageCursor(true, null, 0, true);
+
+	private final boolean edge;          // FIRST or LAST rather than a row
+	private final Timestamp createdAt;
+	private final int id;
+	private final boolean backward;
+
+	private PageCursor(boolean edge, Timestamp createdAt, int id, boolean backward) {
+		if (!edge && createdAt == null) {
+			throw new IllegalArgumentException("A cursor on a row needs the row's creation time.");
+		}
+		this.edge = edge;
+		this.createdAt = createdAt == null ? null : new Timestamp(createdAt.getTime());
+		if (this.createdAt != null) {
+			this.createdAt.setNanos(createdAt.getNanos());
+		}
+		this.id = id;
+		this.backward = backward;
+	}
+
+	// A cursor reading the rows that come after the given row.
+	public static PageCursor after(Timestamp createdAt, int id) {
+		return new PageCursor(false, createdAt, id, false);
+	}
+
+	// A cursor reading the rows that come before the given row.
+	public static PageCursor before(Timestamp createdAt, int id) {
+		return new PageCursor(false, createdAt, id, true);
+	}
+
+	// True for FIRST and LAST, which do not point at a row.
+	public boolean isEdge() {
+		return edge;
+	}
+
+	public boolean isBackward() {
+		return backward;
+	}
+
+	Timestamp getCreatedAt() {
+		return createdAt;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return isEdge() ? (backward ? "PageCursor [LAST]" : "PageCursor [FIRST]")
+				: "PageCursor [" + (backward ? "before " : "after ") + createdAt + ", id=" + id + "]";
+	}
+}
@@ -0,0 +1,251 @@
+package databasePart1;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+
+/**
+ * The PasswordHasher class hashes and verifies passwords with salted PBKDF2 (HMAC-SHA256).
+ *
+ * A stored hash looks like pbkdf2$iterations$salt$hash, with the salt and hash in Base64, so the
+ * iteration count can be raised later without breaking existing rows: verify() reads the count
+ * from the stored value, and needsRehash() reports rows hashed at a lower cost (or not hashed at
+ * all, for accounts created before hashing was added).
+ *
+ * Each hash costs a deliberate amount of CPU, so the work runs on a small dedicated pool rather
+ * than on the caller's thread. The pool has one thread per core and a bounded queue; when the
+ * queue is full new requests fail straight away instead of piling up behind a login storm.
+ * getStats() reports the queue depth and how long requests wait and take, for tuning the
+ * iteration count against the login rate.
+ */
+public class PasswordHasher {
+
+	static final String PREFIX = "pbkdf2";
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+
+	private final int iterations;
+	private final ThreadPoolExecutor executor;
+	private final SecureRandom random = new SecureRandom();
+	private final byte[] unknownUserSalt = new byte[SALT_BYTES];
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong totalRunNanos = new AtomicLong();
+	private final AtomicLong maxRunNanos = new AtomicLong();
+
+	/**
+	 * A snapshot of the hashing pool counters.
+	 */
+	public static final class Stats {
+		public final int iterations;
+		public final int threads;
+		public final int queued;            // Requests waiting for a thread right now
+		public final int active;            // Requests being hashed right now
+		public final long completed;
+		public final long rejected;         // Turned away because the queue was full
+		public final long averageWaitMicros;
+		public final long averageRunMicros;
+		public final long maxRunMicros;
+
+		Stats(int iterations, int threads, int queued, int active, long completed, long rejected,
+				long averageWaitMicros, long averageRunMicros, long maxRunMicros) {
+			this.iterations = iterations;
+			this.threads = threads;
+			this.queued = queued;
+			this.active = active;
+			this.completed = completed;
+			this.rejected = rejected;
+			this.averageWaitMicros = averageWaitMicros;
+			this.averageRunMicros = averageRunMicros;
+			this.maxRunMicros = maxRunMicros;
+		}
+
+		@Override
+		public String toString() {
+			return "HasherStats [iterations=" + iterations + ", threads=" + threads + ", queued=" + queued
+					+ ", active=" + active + ", completed=" + completed + ", rejected=" + rejected
+					+ ", avgWaitMicros=" + averageWaitMicros + ", avgRunMicros=" + averageRunMicros
+					+ ", maxRunMicros=" + maxRunMicros + "]";
+		}
+	}
+
+	public PasswordHasher(int iterations, int threads, int queueCapacity) {
+		if (iterations < 1 || threads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Iterations, threads and queue capacity must be at least 1.");
+		}
+		this.iterations = iterations;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), task -> {
+					Thread thread = new Thread(task, "password-hasher-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		random.nextBytes(unknownUserSalt);
+	}
+
+	// Hashes a password with a fresh salt at the configured cost.
+	public CompletableFuture<String> hash(String password) {
+		return submit(() -> {
+			byte[] salt = new byte[SALT_BYTES];
+			random.nextBytes(salt);
+			byte[] hash = pbkdf2(password, salt, iterations);
+			Base64.Encoder base64 = Base64.getEncoder();
+			return PREFIX + "$" + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+		});
+	}
+
+	/**
+	 * Checks a password against a stored value. A stored value that is not a hash is treated as
+	 * a plaintext password from before hashing was added and compared directly.
+	 */
+	public CompletableFuture<Boolean> verify(String password, String stored) {
+		if (password == null || stored == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		if (!isHash(stored)) {
+			return CompletableFuture.completedFuture(constantTimeEquals(
+					stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8)));
+		}
+		String[] parts = stored.split("\\$");
+		int storedIterations;
+		byte[] salt;
+		byte[] expected;
+		try {
+			storedIterations = Integer.parseInt(parts[1]);
+			salt = Base64.getDecoder().decode(parts[2]);
+			expected = Base64.getDecoder().decode(parts[3]);
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.completedFuture(false); // A damaged hash matches nothing
+		}
+		return submit(() -> constantTimeEquals(expected, pbkdf2(password, salt, storedIterations)));
+	}
+
+	/**
+	 * Does the work of verify() against a current hash, then fails. Used when the user does not
+	 * exist, so that the response time does not tell an attacker which names are registered.
+	 */
+	public CompletableFuture<Boolean> verifyUnknownUser(String password) {
+		String input = password == null ? "" : password;
+		return submit(() -> {
+			pbkdf2(input, unknownUserSalt, iterations);
+			return false;
+		});
+	}
+
+	// True for values produced by hash(), as opposed to legacy plaintext passwords.
+	public static boolean isHash(String stored) {
+		return stored != null && stored.startsWith(PREFIX + "$") && stored.split("\\$").length == 4;
+	}
+
+	// True when a stored value should be replaced: it is plaintext or was hashed at a lower cost.
+	public boolean needsRehash(String stored) {
+		if (!isHash(stored)) {
+			return true;
+		}
+		try {
+			return Integer.parseInt(stored.split("\\$")[1]) < iterations;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public Stats getStats() {
+		long done = completed.get();
+		return new Stats(iterations, executor.getMaximumPoolSize(), executor.getQueue().size(),
+				executor.getActiveCount(), done, rejected.get(),
+				done == 0 ? 0 : totalWaitNanos.get() / done / 1000,
+				done == 0 ? 0 : totalRunNanos.get() / done / 1000,
+				maxRunNanos.get() / 1000);
+	}
+
+	// Stops the hashing threads. Requests still queued fail with a CancellationException.
+	public void shutdown() {
+		for (Runnable dropped : executor.shutdownNow()) {
+			((Task<?>) dropped).future.cancel(false);
+		}
+	}
+
+
+	// Runs a hashing task on the pool, timing how long it waited and how long it ran.
+	private <T> CompletableFuture<T> submit(Callable<T> work) {
+		Task<T> task = new Task<>(work);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			task.future.completeExceptionally(e);
+		}
+		return task.future;
+	}
+
+	// One queued hashing request and the future its caller waits on.
+	private class Task<T> implements Runnable {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		private final Callable<T> work;
+		private final long submitted = System.nanoTime();
+
+		Task(Callable<T> work) {
+			this.work = work;
+		}
+
+		@Override
+		public void run() {
+			long started = System.nanoTime();
+			T result = null;
+			Throwable failure = null;
+			try {
+				result = work.call();
+			} catch (Throwable t) {
+				failure = t;
+			}
+			// Counted before completing, so a caller reading the stats afterwards sees this request
+			long ran = System.nanoTime() - started;
+			totalWaitNanos.addAndGet(started - submitted);
+			totalRunNanos.addAndGet(ran);
+			maxRunNanos.accumulateAndGet(ran, Math::max);
+			completed.incrementAndGet();
+			if (failure == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(failure);
+			}
+		}
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	// Compares in constant time so the response time does not hint at how much matched.
+	private static boolean constantTimeEquals(byte[] a, byte[] b) {
+		return MessageDigest.isEqual(a, b);
+	}
+}
@@ -0,0 +1,137 @@
+package databasePart1;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Query Plan Regression Check
+ * This mainline runs EXPLAIN on every SQL statement DatabaseHelper uses (its SQL_ constants)
+ * against a seeded in-memory database with the full migrated schema.
+ *
+ * It fails if any statement is answered with a table scan, except for the few statements that
+ * read a whole table by design. Run it after changing a query or a migration so that a missing
+ * index shows up before it shows up as a slow login or a slow dashboard.
+ */
+public class QueryPlanCheck {
+
+    // Statements that are expected to read every row of their table
+    static final Set<String> FULL_SCAN_ALLOWED = new HashSet<>(Arrays.asList(
+            "SQL_COUNT_USERS",
+            "SQL_ALL_USERS_AND_ROLES",
+            "SQL_ALL_QUESTIONS",
+            "SQL_ALL_ANSWERS"));
+
+    static final String TEST_DB_URL = "jdbc:h2:mem:queryplancheck;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Fills the tables with enough rows that the optimizer's choices are realistic.
+     */
+    static void seed(Connection connection) throws SQLException {
+        try (PreparedStatement users = connection.prepareStatement(DatabaseHelper.SQL_INSERT_USER);
+             PreparedStatement questions = connection.prepareStatement(DatabaseHelper.SQL_INSERT_QUESTION);
+             PreparedStatement answers = connection.prepareStatement(DatabaseHelper.SQL_INSERT_ANSWER);
+             PreparedStatement otps = connection.prepareStatement(DatabaseHelper.SQL_INSERT_OTP)) {
+            for (int i = 0; i < 500; i++) {
+                users.setString(1, "user" + i);
+                users.setString(2, "password" + i);
+                users.setString(3, i % 50 == 0 ? "admin" : "student");
+                users.addBatch();
+                otps.setString(1, "user" + i);
+                otps.setString(2, String.format("%06d", i));
+                otps.setTimestamp(3, new java.sql.Timestamp(System.currentTimeMillis() + i * 1000L));
+                otps.addBatch();
+            }
+            users.executeBatch();
+            otps.executeBatch();
+            for (int i = 0; i < 2000; i++) {
+                questions.setString(1, "Question number " + i);
+                questions.setString(2, "user" + (i % 500));
+                questions.addBatch();
+            }
+            questions.executeBatch();
+            for (int i = 0; i < 4000; i++) {
+                answers.setInt(1, 1 + (i % 2000));
+                answers.setString(2, "Answer number " + i);
+                answers.setString(3, "user" + (i % 500));
+                answers.addBatch();
+            }
+            answers.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    /**
+     * Returns every SQL_ constant declared by DatabaseHelper, keyed by field name.
+     */
+    static List<String[]> helperQueries() throws IllegalAccessException {
+        List<String[]> queries = new ArrayList<>();
+        for (Field field : DatabaseHelper.class.getDeclaredFields()) {
+            int mods = field.getModifiers();
+            if (Modifier.isStatic(mods) && Modifier.isFinal(mods)
+                    && field.getType() == String.class && field.getName().startsWith("SQL_")) {
+                queries.add(new String[]{field.getName(), (String) field.get(null)});
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Runs EXPLAIN on one statement and returns H2's plan text.
+     */
+    static String explain(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("EXPLAIN " + sql)) {
+            int count = pstmt.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= count; i++) {
+                pstmt.setNull(i, java.sql.Types.NULL);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : "";
+            }
+        }
+    }
+
+    /**
+     * Verifies that no hot statement falls back to a table scan.
+     */
+    public static void testNoTableScans(Connection connection) throws Exception {
+        List<String> failures = new ArrayList<>();
+        for (String[] query : helperQueries()) {
+            String plan = explain(connection, query[1]);
+            boolean scans = plan.contains("tableScan");
+            if (scans && !FULL_SCAN_ALLOWED.contains(query[0])) {
+                failures.add(query[0] + ":\n" + plan);
+            }
+            System.out.println((scans ? "SCAN   " : "INDEX  ") + query[0]);
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError("Queries fell back to a table scan:\n" + String.join("\n\n", failures));
+        }
+        System.out.println("testNoTableScans passed.");
+    }
+
+    /**
+     * Mainline to run the check.
+     */
+    public static void main(String[] args) throws Exception {
+        Class.forName(DatabaseHelper.JDBC_DRIVER);
+        try (Connection connection = DriverManager.getConnection(TEST_DB_URL, DatabaseHelper.USER, DatabaseHelper.PASS)) {
+            new SchemaMigrator().migrate(connection);
+            seed(connection);
+            testNoTableScans(connection);
+        }
+        System.out.println("Query plan check completed.");
+    }
+}
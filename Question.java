@@ -3,12 +3,18 @@ package application;
 public class Question {
     private int id;
     private String text;
+    private String author;          // Who asked the question; null if not known
     private boolean resolved;
     private int solutionAnswerId; // -1 if no solution has been chosen
 
     public Question(int id, String text) {
+        this(id, text, null);
+    }
+    
+    public Question(int id, String text, String author) {
         this.id = id;
         setText(text);
+        this.author = author;
         this.resolved = false;
         this.solutionAnswerId = -1;
     }
@@ -21,6 +27,10 @@ public class Question {
         return text;
     }
     
+    public String getAuthor() {
+        return author;
+    }
+    
     // Input validation: question text cannot be null or empty.
     public void setText(String text) {
         if (text == null || text.trim().isEmpty()) {
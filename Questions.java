@@ -1,56 +1,60 @@
 package application;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class Questions {
-    private List<Question> questionList;
+    // Questions keyed by id, in the order they were added
+    private IntKeyedStore<Question> questionList;
     
     public Questions() {
-        questionList = new ArrayList<>();
+        questionList = new IntKeyedStore<>();
     }
     
-    // Create: Add a new question to the list.
+    // Create: Add a new question. A question with the same id is replaced.
     public void addQuestion(Question question) {
         if (question == null) {
             throw new IllegalArgumentException("Question cannot be null.");
         }
-        questionList.add(question);
+        questionList.put(question.getId(), question);
     }
     
-    // Read: Return a list of all questions.
+    // Read: Return all questions as a read-only view (not a copy) that follows later changes.
     public List<Question> getAllQuestions() {
-        return new ArrayList<>(questionList);
+        return questionList.values();
+    }
+    
+    // Read: Return the question with the given id, or null.
+    public Question getQuestionById(int id) {
+        return questionList.get(id);
     }
     
     // Return a list of unresolved questions.
     public List<Question> getUnresolvedQuestions() {
-        return questionList.stream()
+        return questionList.values().stream()
                            .filter(q -> !q.isResolved())
                            .collect(Collectors.toList());
     }
     
     // Update: Update the text of a question by its id.
     public boolean updateQuestion(int id, String newText) {
-        for (Question q : questionList) {
-            if (q.getId() == id) {
-                q.setText(newText);
-                return true;
-            }
+        Question q = questionList.get(id);
+        if (q == null) {
+            return false;
         }
-        return false;
+        q.setText(newText);
+        return true;
     }
     
     // Delete: Remove a question by its id.
     public boolean deleteQuestion(int id) {
-        return questionList.removeIf(q -> q.getId() == id);
+        return questionList.remove(id) != null;
     }
     
     // Search: Return a subset of questions that satisfy a given predicate.
     public List<Question> searchQuestions(Predicate<Question> predicate) {
-        return questionList.stream()
+        return questionList.values().stream()
                            .filter(predicate)
                            .collect(Collectors.toList());
     }
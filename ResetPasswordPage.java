@@ -49,15 +49,22 @@ public class ResetPasswordPage {
                 return;
             }
 
-            // Step 3: If validation passes, update the password in the database
-            dbHelper.updatePassword(userName, newPassword);
-            dbHelper.clearOTP(userName); // Clear OTP after password reset
+            // Step 3: If validation passes, update the password in the database and clear the OTP.
+            // Hashing the password takes a moment, so it runs off the JavaFX thread.
+            confirmButton.setDisable(true);
+            dbHelper.async().resetPassword(userName, newPassword).whenComplete((ignored, ex) -> {
+                confirmButton.setDisable(false);
+                if (ex != null) {
+                    errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                    ex.printStackTrace();
+                    return;
+                }
+                label.setText("Password reset successfully! Logging out...");
 
-            label.setText("Password reset successfully! Logging out...");
-
-            // Step 4: Redirect to the login page
-            UserLoginPage loginPage = new UserLoginPage(dbHelper);
-            loginPage.show(stage);
+                // Step 4: Redirect to the login page
+                UserLoginPage loginPage = new UserLoginPage(dbHelper);
+                loginPage.show(stage);
+            });
         });
 
         VBox layout = new VBox(10, label, newPasswordField, confirmPasswordField, confirmButton, errorLabel);
@@ -0,0 +1,17 @@
+package databasePart1;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+
+/**
+ * A RowMapper turns the current row of a ResultSet into an object. Mappers only read the row
+ * they are given; moving the cursor is left to the caller.
+ *
+ * A mapper may return null for a row it cannot turn into a valid object, such as an old row
+ * the entity's checks now refuse. Callers skip those rows rather than failing the whole read.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+	T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,43 @@
+package databasePart1;
+
+import application.Answer;
+import application.Question;
+import application.User;
+
+
+/**
+ * Reusable RowMappers for the application's entities. Columns are read by position, so each
+ * mapper documents the column order its query must select.
+ *
+ * Questions and answers go through their validating constructors. Rows written before those
+ * checks existed (blank text or author) are logged and mapped to null, so callers skip them.
+ */
+public final class RowMappers {
+
+	private RowMappers() {
+	}
+
+	// id, text, createdBy
+	public static final RowMapper<Question> QUESTION = skippingInvalid("question",
+			rs -> new Question(rs.getInt(1), rs.getString(2), rs.getString(3)));
+
+	// id, question_id, text, answeredBy
+	public static final RowMapper<Answer> ANSWER = skippingInvalid("answer",
+			rs -> new Answer(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)));
+
+	// userName, role (the password is never read back)
+	public static final RowMapper<User> USER_ROLE =
+			rs -> new User(rs.getString(1), null, rs.getString(2));
+
+	// Returns null, after logging it, for a row the entity refuses. The id is the first column.
+	static <T> RowMapper<T> skippingInvalid(String entity, RowMapper<T> mapper) {
+		return rs -> {
+			try {
+				return mapper.map(rs);
+			} catch (IllegalArgumentException e) {
+				System.err.println("Skipping " + entity + " " + rs.getInt(1) + ": " + e.getMessage());
+				return null;
+			}
+		};
+	}
+}
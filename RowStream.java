@@ -0,0 +1,146 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * The RowStream class runs a query on a pooled connection and hands the rows out one at a time,
+ * so a whole table can be processed without building a list of it first.
+ *
+ * H2 normally materializes a result before returning it, so the query runs with lazy query
+ * execution switched on for its connection. Together with the fetch size this keeps memory use
+ * flat no matter how many rows the table has.
+ */
+final class RowStream<T> implements AutoCloseable {
+
+	private final Connection connection;
+	private final PreparedStatement pstmt;
+	private final ResultSet rs;
+	private final RowMapper<T> mapper;
+	private boolean closed = false;
+
+	private RowStream(Connection connection, PreparedStatement pstmt, ResultSet rs, RowMapper<T> mapper) {
+		this.connection = connection;
+		this.pstmt = pstmt;
+		this.rs = rs;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Runs the query and positions a cursor before its first row. The caller must close the
+	 * returned RowStream; every resource is released even if opening fails half way.
+	 */
+	static <T> RowStream<T> open(ConnectionPool pool, String sql, int fetchSize, RowMapper<T> mapper)
+			throws SQLException {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("Fetch size must be positive.");
+		}
+		Connection connection = pool.getConnection();
+		PreparedStatement pstmt = null;
+		try {
+			setLazy(connection, true);
+			pstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			pstmt.setFetchSize(fetchSize);
+			ResultSet rs = pstmt.executeQuery();
+			return new RowStream<>(connection, pstmt, rs, mapper);
+		} catch (SQLException | RuntimeException e) {
+			closeQuietly(pstmt);
+			resetAndClose(connection);
+			throw e;
+		}
+	}
+
+	private static void setLazy(Connection connection, boolean lazy) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+		}
+	}
+
+	// Reads the next row, or returns false (and closes everything) at the end of the result.
+	boolean next(Consumer<? super T> action) throws SQLException {
+		if (closed) {
+			return false;
+		}
+		while (rs.next()) {
+			T row = mapper.map(rs);
+			if (row != null) { // null: a row the mapper skips
+				action.accept(row);
+				return true;
+			}
+		}
+		close();
+		return false;
+	}
+
+	// Passes every remaining row to the action, then closes.
+	void forEach(Consumer<? super T> action) throws SQLException {
+		try {
+			while (next(action)) {
+				// next() does the work
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Adapts the cursor to a sequential Stream. SQL errors surface as UncheckedSQLException, and
+	 * closing the stream (or reading it to the end) releases the connection.
+	 */
+	Stream<T> stream() {
+		Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					return next(action);
+				} catch (SQLException e) {
+					close();
+					throw new UncheckedSQLException(e);
+				}
+			}
+		};
+		return StreamSupport.stream(rows, false).onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		closeQuietly(rs);
+		closeQuietly(pstmt);
+		resetAndClose(connection);
+	}
+
+	// Turns lazy execution back off before the connection goes back to the pool.
+	private static void resetAndClose(Connection connection) {
+		try {
+			setLazy(connection, false);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		closeQuietly(connection);
+	}
+
+	private static void closeQuietly(AutoCloseable resource) {
+		if (resource == null) {
+			return;
+		}
+		try {
+			resource.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
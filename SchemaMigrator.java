@@ -0,0 +1,244 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The SchemaMigrator class brings the database schema up to date with a numbered list of
+ * migration steps. The version that has been applied is recorded in the schema_version table,
+ * so a database that is already current only costs a single version lookup at startup.
+ *
+ * Every step must be safe to run again (IF NOT EXISTS and similar), because a database created
+ * before versioning existed will replay the steps once to record its version.
+ *
+ * Instances sharing a database through DatabaseServer may start at the same moment, and H2 does
+ * not cope with two sessions altering the same table at once. Those pass a second connection that
+ * holds a row lock on schema_version (the row for version 0) while they migrate, so the others
+ * wait for it and then find the schema already current.
+ */
+public class SchemaMigrator {
+
+	// Updating this row locks it until the lock connection commits
+	private static final String SQL_LOCK =
+			"MERGE INTO schema_version (version, description) KEY (version) VALUES (0, 'Migration lock')";
+
+	private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+	static {
+		add(1, "Create user, invitation, OTP and Q&A tables",
+				"CREATE TABLE IF NOT EXISTS cse360users ("
+						+ "id INT AUTO_INCREMENT PRIMARY KEY, "
+						+ "userName VARCHAR(255) UNIQUE, "
+						+ "password VARCHAR(255), "
+						+ "role VARCHAR(20))",
+				"CREATE TABLE IF NOT EXISTS InvitationCodes ("
+						+ "code VARCHAR(10) PRIMARY KEY, "
+						+ "isUsed BOOLEAN DEFAULT FALSE, "
+						+ "deadline TIMESTAMP)",
+				"CREATE TABLE IF NOT EXISTS user_otp ("
+						+ "userName VARCHAR(255), "
+						+ "otp VARCHAR(10), "
+						+ "isUsed BOOLEAN DEFAULT FALSE)",
+				"CREATE TABLE IF NOT EXISTS questions ("
+						+ "id INT AUTO_INCREMENT PRIMARY KEY, "
+						+ "text VARCHAR(1000) NOT NULL, "
+						+ "createdBy VARCHAR(255) NOT NULL, "
+						+ "createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+				"CREATE TABLE IF NOT EXISTS answers ("
+						+ "id INT AUTO_INCREMENT PRIMARY KEY, "
+						+ "question_id INT, "
+						+ "answeredBy VARCHAR(255) NOT NULL, "
+						+ "text VARCHAR(1000) NOT NULL, "
+						+ "createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+						+ "FOREIGN KEY (question_id) REFERENCES questions(id) ON DELETE CASCADE)");
+
+		add(2, "Secondary indexes for Q&A and user lookups",
+				"CREATE INDEX IF NOT EXISTS idx_questions_createdBy_createdAt ON questions (createdBy, createdAt)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_answeredBy_createdAt ON answers (answeredBy, createdAt)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_question_createdAt ON answers (question_id, createdAt)",
+				"CREATE INDEX IF NOT EXISTS idx_users_role ON cse360users (role)",
+				"CREATE INDEX IF NOT EXISTS idx_otp_userName ON user_otp (userName)");
+
+		// Keyset pagination reads in both directions, and H2 only walks an index in its own order
+		add(3, "Age-ordered indexes for paging questions and answers",
+				"CREATE INDEX IF NOT EXISTS idx_questions_createdAt_id ON questions (createdAt, id)",
+				"CREATE INDEX IF NOT EXISTS idx_questions_createdAt_id_desc ON questions (createdAt DESC, id DESC)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_createdAt_id ON answers (createdAt, id)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_createdAt_id_desc ON answers (createdAt DESC, id DESC)");
+
+		// OTPs now expire; rows from before this have no expiry and are never loaded
+		add(4, "Expiry time for one-time passwords",
+				"ALTER TABLE user_otp ADD COLUMN IF NOT EXISTS expiresAt TIMESTAMP",
+				"CREATE INDEX IF NOT EXISTS idx_otp_expiresAt ON user_otp (expiresAt)");
+
+		// Lets the maintenance purge find expired invitations without reading the whole table
+		add(5, "Deadline index for invitation codes; drop OTP rows without an expiry",
+				"CREATE INDEX IF NOT EXISTS idx_invitations_deadline ON InvitationCodes (deadline)",
+				"DELETE FROM user_otp WHERE expiresAt IS NULL OR isUsed = TRUE");
+
+		// Instances sharing one H2 server tell each other which cached entries changed
+		add(6, "Cross-instance cache invalidations",
+				"CREATE TABLE IF NOT EXISTS cache_invalidations ("
+						+ "seq BIGINT AUTO_INCREMENT PRIMARY KEY, "
+						+ "entity VARCHAR(20) NOT NULL, "
+						+ "entityKey VARCHAR(255) NOT NULL, "
+						+ "origin VARCHAR(36) NOT NULL, "
+						+ "createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+				"CREATE INDEX IF NOT EXISTS idx_invalidations_createdAt ON cache_invalidations (createdAt)");
+
+		// Paging orders by (createdAt, id); a row without a creation time would never be reached
+		add(7, "Creation time required on questions and answers",
+				"UPDATE questions SET createdAt = CURRENT_TIMESTAMP WHERE createdAt IS NULL",
+				"UPDATE answers SET createdAt = CURRENT_TIMESTAMP WHERE createdAt IS NULL",
+				"ALTER TABLE questions ALTER COLUMN createdAt SET NOT NULL",
+				"ALTER TABLE answers ALTER COLUMN createdAt SET NOT NULL");
+	}
+
+	// Registers a migration step. Versions must be added in increasing order.
+	private static void add(int version, String description, String... statements) {
+		if (!MIGRATIONS.isEmpty() && MIGRATIONS.get(MIGRATIONS.size() - 1).version >= version) {
+			throw new IllegalStateException("Migration " + version + " is out of order.");
+		}
+		MIGRATIONS.add(new Migration(version, description, statements));
+	}
+
+	public static int latestVersion() {
+		return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+	}
+
+	public static List<Migration> migrations() {
+		return Collections.unmodifiableList(MIGRATIONS);
+	}
+
+	/**
+	 * Applies every migration newer than the recorded schema version, for a database no other
+	 * instance is using.
+	 *
+	 * @param connection  The connection to run the migration on
+	 * @return            The schema version after migrating
+	 */
+	public int migrate(Connection connection) throws SQLException {
+		return migrate(connection, null);
+	}
+
+	/**
+	 * Applies every migration newer than the recorded schema version, while holding the
+	 * migration lock so that other instances sharing the database wait their turn.
+	 *
+	 * @param connection  The connection to run the migration on
+	 * @param lock        Another connection to the same database, used only to hold the lock;
+	 *                    null when no other instance can be migrating it
+	 * @return            The schema version after migrating
+	 */
+	public int migrate(Connection connection, Connection lock) throws SQLException {
+		int current = currentVersion(connection);
+		if (current >= latestVersion()) {
+			return current; // Fast path: nothing to do
+		}
+
+		if (current < 0) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+						+ "version INT PRIMARY KEY, "
+						+ "description VARCHAR(255), "
+						+ "appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+			}
+			current = 0;
+		}
+
+		if (lock == null) {
+			return applyFrom(connection, current);
+		}
+		boolean lockAutoCommit = lock.getAutoCommit();
+		lock.setAutoCommit(false);
+		try {
+			try (PreparedStatement pstmt = lock.prepareStatement(SQL_LOCK)) {
+				pstmt.executeUpdate(); // Waits while another instance is migrating
+			}
+			// That instance may have brought the schema up to date already
+			return applyFrom(connection, currentVersion(connection));
+		} finally {
+			lock.commit();
+			lock.setAutoCommit(lockAutoCommit);
+		}
+	}
+
+	// Applies the migrations newer than current, each in its own transaction.
+	private int applyFrom(Connection connection, int current) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			for (Migration migration : MIGRATIONS) {
+				if (migration.version <= current) {
+					continue;
+				}
+				System.out.println("Applying schema migration " + migration.version + ": "
+						+ migration.description);
+				try (Statement statement = connection.createStatement()) {
+					for (String sql : migration.statements) {
+						statement.execute(sql);
+					}
+				}
+				try (PreparedStatement pstmt = connection.prepareStatement(
+						"INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+					pstmt.setInt(1, migration.version);
+					pstmt.setString(2, migration.description);
+					pstmt.executeUpdate();
+				}
+				connection.commit();
+				current = migration.version;
+			}
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the highest applied version, 0 for an empty version table, or -1 when the
+	 * version table does not exist yet.
+	 */
+	public int currentVersion(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement();
+		     ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+			return rs.next() ? rs.getInt(1) : 0;
+		} catch (SQLException e) {
+			if (tableExists(connection, "SCHEMA_VERSION")) {
+				throw e; // The table is there, so this is a real failure
+			}
+			return -1;
+		}
+	}
+
+	private boolean tableExists(Connection connection, String tableName) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(null, null, tableName, null)) {
+			return rs.next();
+		}
+	}
+
+
+	/**
+	 * A numbered schema change made of one or more idempotent SQL statements.
+	 */
+	public static class Migration {
+		public final int version;
+		public final String description;
+		private final String[] statements;
+
+		Migration(int version, String description, String[] statements) {
+			this.version = version;
+			this.description = description;
+			this.statements = statements;
+		}
+	}
+}
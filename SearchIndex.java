@@ -0,0 +1,489 @@
+package databasePart1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * The SearchIndex class is an in-memory inverted index over question and answer text, ranked
+ * with BM25. Text is split into lowercase words, common stop-words are dropped and the rest are
+ * reduced to a simple stem, so "posting", "posted" and "posts" all match "post".
+ *
+ * Each indexed post is a document with a dense number. A term's postings list holds the numbers
+ * of the documents containing it, in increasing order, with the term's count in each. Updating
+ * or removing a post only marks its old document dead; dead documents are skipped while scoring
+ * and dropped from the postings once they outnumber the live ones.
+ *
+ * The index is safe to search from several threads while another thread updates it.
+ */
+public class SearchIndex {
+
+	public enum Kind { QUESTION, ANSWER }
+
+	// BM25 parameters: term frequency saturation and document length normalization
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+
+	// Dead documents are dropped once there are at least this many and more dead than live
+	private static final int COMPACT_MIN_DEAD = 1024;
+
+	private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+			"a", "an", "and", "are", "as", "at", "be", "but", "by", "can", "do", "does", "for", "from",
+			"has", "have", "how", "i", "if", "in", "into", "is", "it", "its", "me", "my", "no", "not",
+			"of", "on", "or", "so", "such", "that", "the", "their", "then", "there", "these", "they",
+			"this", "to", "was", "we", "what", "when", "where", "which", "who", "why", "will", "with",
+			"you", "your"));
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final HashMap<String, Postings> postings = new HashMap<>();
+	private final HashMap<Long, Integer> docByKey = new HashMap<>();
+	// Question id -> ids of its live answers, so removing a question finds them without a scan
+	private final HashMap<Integer, Set<Integer>> answersByQuestion = new HashMap<>();
+
+	// Per-document columns, indexed by document number. length is -1 for a dead document.
+	private Kind[] kinds = new Kind[1024];
+	private int[] rowIds = new int[1024];
+	private int[] questionIds = new int[1024];
+	private int[] lengths = new int[1024];
+	private int docCount;
+	private int liveDocs;
+	private int deadDocs;
+	private long totalLength;
+
+	// Score accumulators reused between searches on the same thread
+	private static final ThreadLocal<float[]> SCORES = ThreadLocal.withInitial(() -> new float[0]);
+
+
+	/**
+	 * One search result. The snippet is filled in by DatabaseHelper.search, which reads the
+	 * post's current text.
+	 */
+	public static class Hit {
+		private final Kind kind;
+		private final int id;
+		private final int questionId;
+		private final float score;
+		String snippet;
+
+		Hit(Kind kind, int id, int questionId, float score) {
+			this.kind = kind;
+			this.id = id;
+			this.questionId = questionId;
+			this.score = score;
+		}
+
+		public Kind getKind() { return kind; }
+		public int getId() { return id; }
+		public int getQuestionId() { return questionId; }   // The question itself for a question hit
+		public float getScore() { return score; }
+		public String getSnippet() { return snippet; }
+
+		@Override
+		public String toString() {
+			return (kind == Kind.QUESTION ? "Q" : "A") + id + " (" + String.format("%.2f", score) + "): " + snippet;
+		}
+	}
+
+	// The documents containing one term and the term's count in each, ordered by document.
+	private static class Postings {
+		int[] docs = new int[4];
+		int[] freqs = new int[4];
+		int size;
+
+		void add(int doc, int freq) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				freqs = Arrays.copyOf(freqs, size * 2);
+			}
+			docs[size] = doc;
+			freqs[size] = freq;
+			size++;
+		}
+	}
+
+
+	public void addQuestion(int id, String text) {
+		put(Kind.QUESTION, id, id, text);
+	}
+
+	public void addAnswer(int id, int questionId, String text) {
+		put(Kind.ANSWER, id, questionId, text);
+	}
+
+	// Replaces the text of an indexed post, keeping the question an answer belongs to.
+	public void update(Kind kind, int id, String text) {
+		lock.writeLock().lock();
+		try {
+			Integer doc = docByKey.get(key(kind, id));
+			int questionId = doc != null ? questionIds[doc] : (kind == Kind.QUESTION ? id : 0);
+			put(kind, id, questionId, text);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Removes a question together with its answers, as the database's cascade does.
+	public void removeQuestion(int id) {
+		lock.writeLock().lock();
+		try {
+			kill(docByKey.remove(key(Kind.QUESTION, id)));
+			Set<Integer> answers = answersByQuestion.remove(id);
+			if (answers != null) {
+				for (int answerId : answers) {
+					kill(docByKey.remove(key(Kind.ANSWER, answerId)));
+				}
+			}
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void removeAnswer(int id) {
+		lock.writeLock().lock();
+		try {
+			Integer doc = docByKey.remove(key(Kind.ANSWER, id));
+			if (doc != null) {
+				unlinkAnswer(questionIds[doc], id);
+			}
+			kill(doc);
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Number of posts in the index.
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return liveDocs;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void put(Kind kind, int id, int questionId, String text) {
+		Map<String, int[]> counts = new HashMap<>();
+		int length = 0;
+		for (String term : tokenize(text)) {
+			counts.computeIfAbsent(term, t -> new int[1])[0]++;
+			length++;
+		}
+
+		lock.writeLock().lock();
+		try {
+			Long key = key(kind, id);
+			Integer old = docByKey.get(key);
+			if (kind == Kind.ANSWER) {
+				if (old != null) {
+					unlinkAnswer(questionIds[old], id);
+				}
+				answersByQuestion.computeIfAbsent(questionId, q -> new HashSet<>()).add(id);
+			}
+			kill(old);
+			int doc = newDoc(kind, id, questionId, length);
+			docByKey.put(key, doc);
+			for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+				postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(doc, entry.getValue()[0]);
+			}
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void unlinkAnswer(int questionId, int answerId) {
+		Set<Integer> answers = answersByQuestion.get(questionId);
+		if (answers != null && answers.remove(answerId) && answers.isEmpty()) {
+			answersByQuestion.remove(questionId);
+		}
+	}
+
+	private int newDoc(Kind kind, int id, int questionId, int length) {
+		if (docCount == lengths.length) {
+			int capacity = docCount * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			rowIds = Arrays.copyOf(rowIds, capacity);
+			questionIds = Arrays.copyOf(questionIds, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		int doc = docCount++;
+		kinds[doc] = kind;
+		rowIds[doc] = id;
+		questionIds[doc] = questionId;
+		lengths[doc] = length;
+		liveDocs++;
+		totalLength += length;
+		return doc;
+	}
+
+	private void kill(Integer doc) {
+		if (doc == null || lengths[doc] < 0) {
+			return;
+		}
+		totalLength -= lengths[doc];
+		lengths[doc] = -1;
+		liveDocs--;
+		deadDocs++;
+	}
+
+	// Renumbers the live documents and rewrites every postings list without the dead ones.
+	private void compactIfNeeded() {
+		if (deadDocs < COMPACT_MIN_DEAD || deadDocs <= liveDocs) {
+			return;
+		}
+		int[] renumber = new int[docCount];
+		int next = 0;
+		for (int doc = 0; doc < docCount; doc++) {
+			if (lengths[doc] < 0) {
+				renumber[doc] = -1;
+				continue;
+			}
+			renumber[doc] = next;
+			kinds[next] = kinds[doc];
+			rowIds[next] = rowIds[doc];
+			questionIds[next] = questionIds[doc];
+			lengths[next] = lengths[doc];
+			next++;
+		}
+		Arrays.fill(kinds, next, docCount, null);
+		docCount = next;
+		deadDocs = 0;
+
+		postings.values().removeIf(list -> {
+			int kept = 0;
+			for (int i = 0; i < list.size; i++) {
+				int doc = renumber[list.docs[i]];
+				if (doc >= 0) {
+					list.docs[kept] = doc;
+					list.freqs[kept] = list.freqs[i];
+					kept++;
+				}
+			}
+			list.size = kept;
+			return kept == 0;
+		});
+		docByKey.replaceAll((key, doc) -> renumber[doc]);
+	}
+
+	private static Long key(Kind kind, int id) {
+		return ((long) kind.ordinal() << 32) | (id & 0xffffffffL);
+	}
+
+
+	/**
+	 * Returns the best matching posts for a query, highest BM25 score first.
+	 */
+	public List<Hit> search(String query, int limit) {
+		Set<String> terms = new LinkedHashSet<>(tokenize(query));
+		List<Hit> hits = new ArrayList<>();
+		if (terms.isEmpty() || limit <= 0) {
+			return hits;
+		}
+
+		lock.readLock().lock();
+		try {
+			if (liveDocs == 0) {
+				return hits;
+			}
+			float[] scores = SCORES.get();
+			if (scores.length < docCount) {
+				scores = new float[Math.max(docCount, scores.length * 2)];
+				SCORES.set(scores);
+			}
+			float averageLength = Math.max(1f, (float) totalLength / liveDocs);
+
+			// Term at a time: add each term's contribution to every document that contains it
+			int[] touched = new int[16];
+			int touchedCount = 0;
+			for (String term : terms) {
+				Postings list = postings.get(term);
+				if (list == null) {
+					continue;
+				}
+				// The postings size still counts dead documents until the next compaction
+				int df = Math.min(list.size, liveDocs);
+				float idf = (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+				for (int i = 0; i < list.size; i++) {
+					int doc = list.docs[i];
+					int length = lengths[doc];
+					if (length < 0) {
+						continue;
+					}
+					int freq = list.freqs[i];
+					if (scores[doc] == 0f) {
+						if (touchedCount == touched.length) {
+							touched = Arrays.copyOf(touched, touchedCount * 2);
+						}
+						touched[touchedCount++] = doc;
+					}
+					scores[doc] += idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / averageLength));
+				}
+			}
+
+			// Keep the best few in a min-heap ordered by score, then by document for ties
+			final float[] s = scores;
+			PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1,
+					(x, y) -> s[x] != s[y] ? Float.compare(s[x], s[y]) : Integer.compare(y, x));
+			for (int i = 0; i < touchedCount; i++) {
+				int doc = touched[i];
+				if (best.size() < limit) {
+					best.add(doc);
+				} else if (s[doc] > s[best.peek()]) {
+					best.poll();
+					best.add(doc);
+				}
+			}
+			while (!best.isEmpty()) {
+				int doc = best.poll();
+				hits.add(new Hit(kinds[doc], rowIds[doc], questionIds[doc], s[doc]));
+			}
+			for (int i = 0; i < touchedCount; i++) {
+				scores[touched[i]] = 0f;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		Collections.reverse(hits);
+		return hits;
+	}
+
+
+	/**
+	 * Splits text into the terms the index stores: lowercase letter and digit runs, without
+	 * stop-words, each reduced to its stem.
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<>();
+		if (text == null) {
+			return terms;
+		}
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				String term = normalize(text.substring(start, i));
+				if (term != null) {
+					terms.add(term);
+				}
+			}
+		}
+		return terms;
+	}
+
+	// Lowercases and stems one word, or returns null for a stop-word.
+	private static String normalize(String word) {
+		String lower = word.toLowerCase();
+		return STOP_WORDS.contains(lower) ? null : stem(lower);
+	}
+
+	/**
+	 * A light suffix-stripping stemmer for English: plurals, -ing, -ed and -ly. It is not
+	 * linguistically exact, but the same word always gets the same stem, which is all the
+	 * index needs.
+	 */
+	static String stem(String word) {
+		int n = word.length();
+		if (n <= 3) {
+			return word;
+		}
+		String stem = word;
+		if (word.endsWith("ies") && n > 4) {
+			return word.substring(0, n - 3) + "y";
+		} else if (word.endsWith("sses") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("xes")) {
+			return word.substring(0, n - 2);
+		} else if (word.endsWith("ing") && n > 5) {
+			stem = word.substring(0, n - 3);
+		} else if (word.endsWith("ed") && n > 4) {
+			stem = word.substring(0, n - 2);
+		} else if (word.endsWith("ly") && n > 4) {
+			return word.substring(0, n - 2);
+		} else if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")) {
+			return word.substring(0, n - 1);
+		}
+		// "running" -> "runn" -> "run", but leave "fall" and "pass" alone
+		int m = stem.length();
+		if (m > 2 && stem.charAt(m - 1) == stem.charAt(m - 2) && "lsz".indexOf(stem.charAt(m - 1)) < 0
+				&& !isVowel(stem.charAt(m - 1))) {
+			stem = stem.substring(0, m - 1);
+		}
+		return stem;
+	}
+
+	private static boolean isVowel(char c) {
+		return "aeiou".indexOf(c) >= 0;
+	}
+
+
+	/**
+	 * Returns a piece of text of at most maxLength characters around the first word matching
+	 * one of the terms, with every matching word wrapped in [brackets].
+	 */
+	public static String highlight(String text, Collection<String> terms, int maxLength) {
+		if (text == null) {
+			return "";
+		}
+		Set<String> wanted = new HashSet<>(terms);
+		List<int[]> matches = new ArrayList<>();  // {start, end} of each matching word
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			if (i > start && wanted.contains(normalize(text.substring(start, i)))) {
+				matches.add(new int[]{start, i});
+			}
+		}
+
+		// Start the window a little before the first match, on a word boundary
+		int from = 0;
+		if (!matches.isEmpty() && length > maxLength) {
+			from = Math.max(0, Math.min(matches.get(0)[0] - maxLength / 4, length - maxLength));
+			while (from > 0 && Character.isLetterOrDigit(text.charAt(from - 1))) {
+				from++;
+			}
+		}
+		int to = Math.min(length, from + maxLength);
+
+		StringBuilder sb = new StringBuilder();
+		if (from > 0) {
+			sb.append("...");
+		}
+		int at = from;
+		for (int[] match : matches) {
+			if (match[0] < from || match[1] > to) {
+				continue;
+			}
+			sb.append(text, at, match[0]).append('[').append(text, match[0], match[1]).append(']');
+			at = match[1];
+		}
+		sb.append(text, at, to);
+		if (to < length) {
+			sb.append("...");
+		}
+		return sb.toString().replace('\n', ' ');
+	}
+}
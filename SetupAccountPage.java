@@ -5,8 +5,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -65,30 +63,33 @@ public class SetupAccountPage {
                 return;
             }
             
-            try {
+            // Registering hashes the password, which takes a moment, so it runs off the JavaFX thread
+            User user = new User(userName, password, "user");
+            setupButton.setDisable(true);
+            databaseHelper.async().execute(db -> {
             	// Check if the user already exists
-            	if(!databaseHelper.doesUserExist(userName)) {
-            		// Validate the invitation code
-            		if(databaseHelper.validateInvitationCode(code)) {
-            			// Create a new user and register them in the database
-		            	User user=new User(userName, password, "user");
-		                databaseHelper.register(user);
-		                
-		             // Navigate to the Welcome Login Page
-		                new WelcomeLoginPage(databaseHelper).show(primaryStage, user);
-            		}
-            		else {
-            			errorLabel.setText("The invitation code is invalid or has expired.");
-            		}
+            	if (db.doesUserExist(userName)) {
+            		return "This userName is taken! Please use another to set up an account.";
             	}
-            	else {
-            		errorLabel.setText("This userName is taken! Please use another to set up an account.");
+            	// Validate the invitation code
+            	if (!db.validateInvitationCode(code)) {
+            		return "The invitation code is invalid or has expired.";
             	}
-            	
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+            	// Create a new user and register them in the database
+            	db.register(user);
+            	return null;
+            }).whenComplete((error, ex) -> {
+            	setupButton.setDisable(false);
+            	if (ex != null) {
+            		errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+            		ex.printStackTrace();
+            	} else if (error != null) {
+            		errorLabel.setText(error);
+            	} else {
+            		// Navigate to the Welcome Login Page
+            		new WelcomeLoginPage(databaseHelper).show(primaryStage, user);
+            	}
+            });
         });
 
         // Back button - now appears below the setup button
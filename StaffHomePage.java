@@ -1,19 +1,26 @@
 package application;
 
+import databasePart1.AsyncDatabaseHelper;
 import databasePart1.DatabaseHelper;
+import databasePart1.Page;
+import databasePart1.PageCursor;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class StaffHomePage {
 
+    // Number of rows fetched per page in the dashboard lists
+    private static final int PAGE_SIZE = 50;
+
     private final DatabaseHelper databaseHelper;
 
     public StaffHomePage(DatabaseHelper databaseHelper) {
@@ -58,21 +65,11 @@ public class StaffHomePage {
         Label label = new Label("Questions without answers:");
         ListView<String> questionList = new ListView<>();
 
-        try {
-            List<String[]> questions = databaseHelper.getAllQuestions();
-            List<String[]> answers = databaseHelper.getAllAnswers();
+        // The database filters out answered questions, so only one page of rows is read
+        HBox pager = createPager(questionList, databaseHelper.async()::getUnansweredQuestionsPage,
+                q -> "Q" + q.getId() + ": " + q.getText());
 
-            for (String[] q : questions) {
-                boolean isAnswered = answers.stream().anyMatch(a -> a[0].equals(q[0]));
-                if (!isAnswered) {
-                    questionList.getItems().add("Q" + q[0] + ": " + q[1]);
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        layout.getChildren().addAll(label, questionList);
+        layout.getChildren().addAll(label, questionList, pager);
         tab.setContent(layout);
         return tab;
     }
@@ -87,14 +84,8 @@ public class StaffHomePage {
         Button flagButton = new Button("Flag Selected");
         Label statusLabel = new Label();
 
-        try {
-            List<String[]> questions = databaseHelper.getAllQuestions();
-            for (String[] q : questions) {
-                questionList.getItems().add("Q" + q[0] + ": " + q[1]);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        HBox pager = createPager(questionList, databaseHelper.async()::getQuestionsPage,
+                q -> "Q" + q.getId() + ": " + q.getText());
 
         flagButton.setOnAction(e -> {
             String selected = questionList.getSelectionModel().getSelectedItem();
@@ -106,7 +97,7 @@ public class StaffHomePage {
             }
         });
 
-        layout.getChildren().addAll(label, questionList, flagButton, statusLabel);
+        layout.getChildren().addAll(label, questionList, pager, flagButton, statusLabel);
         tab.setContent(layout);
         return tab;
     }
@@ -123,14 +114,8 @@ public class StaffHomePage {
         Button submitButton = new Button("Submit Feedback");
         Label statusLabel = new Label();
 
-        try {
-            List<String[]> answers = databaseHelper.getAllAnswers();
-            for (String[] a : answers) {
-                answerList.getItems().add("A" + a[0] + ": " + a[1]);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        HBox pager = createPager(answerList, databaseHelper.async()::getAnswersPage,
+                a -> "A" + a.getId() + ": " + a.getAnswerText());
 
         submitButton.setOnAction(e -> {
             String selected = answerList.getSelectionModel().getSelectedItem();
@@ -143,8 +128,90 @@ public class StaffHomePage {
             }
         });
 
-        layout.getChildren().addAll(label, answerList, feedbackField, submitButton, statusLabel);
+        layout.getChildren().addAll(label, answerList, pager, feedbackField, submitButton, statusLabel);
         tab.setContent(layout);
         return tab;
     }
+
+    // Fetches one page of rows starting at the given cursor, off the JavaFX thread.
+    private interface PageLoader<T> {
+        CompletableFuture<Page<T>> load(PageCursor cursor, int pageSize);
+    }
+
+    // Builds Previous/Next controls that fill the list one page at a time, so only the rows
+    // on screen are read from the database.
+    private <T> HBox createPager(ListView<String> list, PageLoader<T> loader, Function<T, String> format) {
+        Pager<T> pager = new Pager<>(list, loader, format);
+        pager.load(PageCursor.FIRST, 1);
+        return pager.controls;
+    }
+
+    // Keeps track of the page a list is showing and the buttons that move between pages.
+    private static class Pager<T> {
+        private final ListView<String> list;
+        private final PageLoader<T> loader;
+        private final Function<T, String> format;
+        private final Button previousButton = new Button("< Previous");
+        private final Button nextButton = new Button("Next >");
+        private final Label pageLabel = new Label();
+        private final HBox controls = new HBox(10, previousButton, pageLabel, nextButton);
+        private Page<T> current;
+        private int pageNumber;
+        private CompletableFuture<Page<T>> pending; // The page being fetched, if any
+
+        Pager(ListView<String> list, PageLoader<T> loader, Function<T, String> format) {
+            this.list = list;
+            this.loader = loader;
+            this.format = format;
+            controls.setAlignment(Pos.CENTER_LEFT);
+            previousButton.setOnAction(e -> load(current.previous(), pageNumber - 1));
+            nextButton.setOnAction(e -> load(current.next(), pageNumber + 1));
+        }
+
+        void load(PageCursor cursor, int number) {
+            // Only the latest request matters, so a click while a page is loading replaces it
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            previousButton.setDisable(true);
+            nextButton.setDisable(true);
+            pageLabel.setText("Loading...");
+            CompletableFuture<Page<T>> request = loader.load(cursor, PAGE_SIZE);
+            pending = request;
+            request.whenComplete((page, error) -> {
+                if (pending != request || AsyncDatabaseHelper.isCancelled(error)) {
+                    return;
+                }
+                pending = null;
+                if (error != null) {
+                    pageLabel.setText("Error loading page.");
+                    AsyncDatabaseHelper.unwrap(error).printStackTrace();
+                    if (current != null) {
+                        previousButton.setDisable(!current.hasPrevious());
+                        nextButton.setDisable(!current.hasNext());
+                    }
+                    return;
+                }
+                show(page, number);
+            });
+        }
+
+        private void show(Page<T> page, int number) {
+            list.getItems().clear();
+            for (T row : page.getItems()) {
+                list.getItems().add(format.apply(row));
+            }
+            current = page;
+            // Rows deleted by someone else can shift the numbering, so never go below 1
+            pageNumber = Math.max(1, number);
+            if (page.getEstimatedTotal() < 0) {
+                pageLabel.setText("Page " + pageNumber);
+            } else {
+                long pages = Math.max(1, (page.getEstimatedTotal() + PAGE_SIZE - 1) / PAGE_SIZE);
+                pageLabel.setText("Page " + pageNumber + " of about " + pages);
+            }
+            previousButton.setDisable(!page.hasPrevious());
+            nextButton.setDisable(!page.hasNext());
+        }
+    }
 }
@@ -5,6 +5,7 @@ import javafx.stage.Stage;
 import java.sql.SQLException;
 
 import databasePart1.DatabaseHelper;
+import databasePart1.StorageProfile;
 
 
 public class StartCSE360 extends Application {
@@ -19,6 +20,11 @@ public class StartCSE360 extends Application {
 	@Override
     public void start(Stage primaryStage) {
         try {
+            // --storage=NAME picks the storage profile, e.g. --storage=in-memory for a throwaway database
+            String storage = getParameters().getNamed().get("storage");
+            if (storage != null) {
+                databaseHelper.setStorageProfile(StorageProfile.named(storage));
+            }
             databaseHelper.connectToDatabase(); // Connect to the database
             if (databaseHelper.isDatabaseEmpty()) {
             	
@@ -27,10 +33,15 @@ public class StartCSE360 extends Application {
             	new SetupLoginSelectionPage(databaseHelper).show(primaryStage);
                 
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
         	System.out.println(e.getMessage());
         }
     }
 	
+	// Writes whatever is still queued, then closes the database (and any H2 server started here).
+	@Override
+	public void stop() {
+		databaseHelper.closeConnection();
+	}
 
 }
@@ -0,0 +1,201 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * The StorageProfile enum names the ways the application can store its H2 database.
+ *
+ * The profile is chosen at launch with -Dcse360.storage=NAME or the --storage=NAME program
+ * argument, and defaults to EMBEDDED. Each profile builds its JDBC URL from a database path
+ * (-Dcse360.db.path, default ~/FoundationDatabase) and a set of H2 settings. The cache size in KB
+ * and the write delay in milliseconds can be overridden with -Dcse360.db.cacheSize and
+ * -Dcse360.db.writeDelay, so the cache can be sized to the data set without a new build.
+ *
+ * DatabaseHelper validates the profile before connecting, then reads the settings H2 actually
+ * applied back from INFORMATION_SCHEMA.SETTINGS and reports any that differ from the request.
+ */
+public enum StorageProfile {
+
+	// Nothing is written to disk; the data is gone when the application exits. For tests.
+	IN_MEMORY("In-memory database for tests", "jdbc:h2:mem:", false,
+			"DB_CLOSE_DELAY", "-1"),
+
+	// A database file next to the application, with a cache sized for a course's Q&A data
+	EMBEDDED("Embedded database file", "jdbc:h2:", true,
+			"CACHE_SIZE", "32768",
+			"WRITE_DELAY", "500"),
+
+	// For days when the pages are mostly read: a larger page cache, more cached statements per
+	// connection, and writes grouped over a longer delay
+	READ_MOSTLY("Embedded database file tuned for reads", "jdbc:h2:", true,
+			"CACHE_SIZE", "131072",
+			"WRITE_DELAY", "2000",
+			"QUERY_CACHE_SIZE", "64"),
+
+	// A database served by an H2 TCP server at -Dcse360.db.server (default localhost:9092), so
+	// several instances can share it. See DatabaseServer for how the server is found or started.
+	// The server owns the file and its tuning, so no settings are sent.
+	SERVER("Database on an H2 TCP server", "jdbc:h2:tcp://", false);
+
+	public static final String PROFILE_PROPERTY = "cse360.storage";
+	static final String PATH_PROPERTY = "cse360.db.path";
+	static final String SERVER_PROPERTY = "cse360.db.server";
+	static final String CACHE_SIZE_PROPERTY = "cse360.db.cacheSize";
+	static final String WRITE_DELAY_PROPERTY = "cse360.db.writeDelay";
+
+	static final String DEFAULT_PATH = "~/FoundationDatabase";
+	static final String DEFAULT_SERVER = "localhost:9092";
+	static final int DEFAULT_PORT = 9092;
+
+	private static final String SQL_SETTINGS =
+			"SELECT SETTING_NAME, SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS";
+
+	private final String description;
+	private final String urlPrefix;
+	private final boolean tunable;     // Whether the cache size and write delay overrides apply
+	private final Map<String, String> defaults = new LinkedHashMap<>();
+
+	StorageProfile(String description, String urlPrefix, boolean tunable, String... settings) {
+		this.description = description;
+		this.urlPrefix = urlPrefix;
+		this.tunable = tunable;
+		for (int i = 0; i < settings.length; i += 2) {
+			defaults.put(settings[i], settings[i + 1]);
+		}
+	}
+
+	// Looks a profile up by name, ignoring case and accepting - for _ (read-mostly, READ_MOSTLY).
+	public static StorageProfile named(String name) {
+		String key = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+		for (StorageProfile profile : values()) {
+			if (profile.name().equals(key)) {
+				return profile;
+			}
+		}
+		throw new IllegalArgumentException("Unknown storage profile \"" + name + "\". Choose one of "
+				+ Arrays.toString(values()) + ".");
+	}
+
+	// The profile named by -Dcse360.storage, or EMBEDDED when it is not set.
+	public static StorageProfile fromSystemProperty() {
+		String name = System.getProperty(PROFILE_PROPERTY);
+		return name == null || name.trim().isEmpty() ? EMBEDDED : named(name);
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	// The H2 settings this profile asks for, after any -D overrides.
+	public Map<String, String> settings() {
+		Map<String, String> settings = new LinkedHashMap<>(defaults);
+		if (tunable) {
+			override(settings, "CACHE_SIZE", CACHE_SIZE_PROPERTY);
+			override(settings, "WRITE_DELAY", WRITE_DELAY_PROPERTY);
+		}
+		return Collections.unmodifiableMap(settings);
+	}
+
+	private static void override(Map<String, String> settings, String setting, String property) {
+		String value = System.getProperty(property);
+		if (value != null && !value.trim().isEmpty()) {
+			settings.put(setting, value.trim());
+		}
+	}
+
+	// The host of -Dcse360.db.server, for the SERVER profile.
+	static String serverHost() {
+		String address = System.getProperty(SERVER_PROPERTY, DEFAULT_SERVER);
+		int colon = address.lastIndexOf(':');
+		return colon < 0 ? address : address.substring(0, colon);
+	}
+
+	// The port of -Dcse360.db.server, for the SERVER profile; 9092 when none is given.
+	static int serverPort() {
+		String address = System.getProperty(SERVER_PROPERTY, DEFAULT_SERVER);
+		int colon = address.lastIndexOf(':');
+		return colon < 0 ? DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+	}
+
+	public String url() {
+		String path = System.getProperty(PATH_PROPERTY, DEFAULT_PATH);
+		String location;
+		if (this == IN_MEMORY) {
+			// A private name, so tests never open a file database by accident
+			location = path.substring(path.lastIndexOf('/') + 1);
+		} else if (this == SERVER) {
+			location = System.getProperty(SERVER_PROPERTY, DEFAULT_SERVER) + "/" + path;
+		} else {
+			location = path;
+		}
+		StringBuilder url = new StringBuilder(urlPrefix).append(location);
+		settings().forEach((name, value) -> url.append(';').append(name).append('=').append(value));
+		return url.toString();
+	}
+
+	/**
+	 * Checks the profile's settings before connecting: numeric settings must be whole numbers
+	 * in range, the database path must not be empty, and a server port must be valid.
+	 */
+	void validate() throws SQLException {
+		if (System.getProperty(PATH_PROPERTY, DEFAULT_PATH).trim().isEmpty()) {
+			throw new SQLException("Storage profile " + this + ": the database path (" + PATH_PROPERTY + ") is empty.");
+		}
+		if (this == SERVER) {
+			int port;
+			try {
+				port = serverPort();
+			} catch (NumberFormatException e) {
+				throw new SQLException("Storage profile SERVER: " + SERVER_PROPERTY + " must be host:port, not \""
+						+ System.getProperty(SERVER_PROPERTY) + "\".");
+			}
+			if (port < 1 || port > 65535) {
+				throw new SQLException("Storage profile SERVER: port " + port + " is out of range.");
+			}
+		}
+		for (Map.Entry<String, String> setting : settings().entrySet()) {
+			long value;
+			try {
+				value = Long.parseLong(setting.getValue());
+			} catch (NumberFormatException e) {
+				throw new SQLException("Storage profile " + this + ": " + setting.getKey() + " must be a whole number, not \""
+						+ setting.getValue() + "\".");
+			}
+			long min = setting.getKey().equals("DB_CLOSE_DELAY") ? -1 : 0;
+			if (value < min || value > Integer.MAX_VALUE) {
+				throw new SQLException("Storage profile " + this + ": " + setting.getKey() + " is out of range: " + value);
+			}
+		}
+	}
+
+	/**
+	 * Reads back the settings H2 applied for each one this profile asked for. A setting H2 does not
+	 * report is shown as "(default)".
+	 */
+	Map<String, String> effectiveSettings(Connection connection) throws SQLException {
+		Map<String, String> reported = new LinkedHashMap<>();
+		try (PreparedStatement pstmt = connection.prepareStatement(SQL_SETTINGS);
+		     ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				reported.putIfAbsent(rs.getString(1), rs.getString(2)); // The first row is the database's own value
+			}
+		}
+		Map<String, String> effective = new LinkedHashMap<>();
+		for (String name : settings().keySet()) {
+			if (!name.equals("DB_CLOSE_DELAY")) {  // A connection setting H2 does not list
+				effective.put(name, reported.getOrDefault(name, "(default)"));
+			}
+		}
+		effective.put("info.VERSION", reported.getOrDefault("info.VERSION", "unknown"));
+		return effective;
+	}
+}
@@ -1,6 +1,9 @@
 package application;
 
 import databasePart1.DatabaseHelper;
+import databasePart1.SearchIndex;
+import databasePart1.WriteBehindRepository;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -12,22 +15,63 @@ import javafx.stage.Stage;
 import java.sql.SQLException;
 
 public class StudentHomePage {
+    // Most results shown for one search
+    private static final int SEARCH_RESULTS = 20;
+
     private DatabaseHelper databaseHelper;
+    // The student using the page; recorded as the author of their questions and answers.
+    private final String userName;
     // Shared list to store unresolved questions.
-    private ObservableList<String> unresolvedQuestionsList = FXCollections.observableArrayList();
+    private ObservableList<Post> unresolvedQuestionsList = FXCollections.observableArrayList();
     // List to store all asked questions and, if answered, their answer.
-    private ObservableList<String> allQuestionsList = FXCollections.observableArrayList();
-    // Counter for sequentially numbering questions.
-    private int questionCounter = 1;
+    private ObservableList<Post> allQuestionsList = FXCollections.observableArrayList();
 
     // Constructor that accepts a DatabaseHelper instance.
     public StudentHomePage(DatabaseHelper databaseHelper) {
+        this(databaseHelper, "student");
+    }
+
+    public StudentHomePage(DatabaseHelper databaseHelper, String userName) {
         this.databaseHelper = databaseHelper;
+        this.userName = userName;
+    }
+
+    // A question asked on this page and, once answered, its answer. The rows are saved in the
+    // background, so the database id shows up in the lists once the insert has committed.
+    private static class Post {
+        final WriteBehindRepository.Row question;
+        String text;
+        WriteBehindRepository.Row answer;
+        String answerText;
+
+        Post(WriteBehindRepository.Row question, String text) {
+            this.question = question;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            int id = question.getId();
+            String entry = (id > 0 ? "Q" + id : "Q (saving)") + ": " + text;
+            return answerText == null ? entry : entry + " | Answer: " + answerText;
+        }
+    }
+
+    // Redraws a post in both lists, e.g. once its database id is known.
+    private void refresh(Post post) {
+        int index = allQuestionsList.indexOf(post);
+        if (index >= 0) {
+            allQuestionsList.set(index, post);
+        }
+        index = unresolvedQuestionsList.indexOf(post);
+        if (index >= 0) {
+            unresolvedQuestionsList.set(index, post);
+        }
     }
 
     // The show method creates the UI and displays the Student Home Page on the given Stage.
     public void show(Stage stage) {
-        // Connect to the database.
+        // Connect to the database (does nothing if the pool is already open).
         try {
             databaseHelper.connectToDatabase();
         } catch (SQLException e) {
@@ -90,17 +134,28 @@ public class StudentHomePage {
             String questionText = questionField.getText().trim();
             if (questionText.isEmpty()) {
                 feedbackLabel.setText("Question cannot be empty.");
+            } else if (questionText.length() > WriteBehindRepository.MAX_TEXT_LENGTH) {
+                feedbackLabel.setText("Question cannot be longer than " + WriteBehindRepository.MAX_TEXT_LENGTH + " characters.");
             } else {
-                // Use sequential numbering for the question.
-                int id = questionCounter++;
-                Question q = new Question(id, questionText);
-                String baseQuestion = "Q" + id + ": " + questionText;
-                feedbackLabel.setText("Question submitted: " + q);
+                // Queued for saving; the database assigns the id without holding up the page.
+                WriteBehindRepository.Row row = databaseHelper.writeBehind().submitQuestion(questionText, userName);
+                Post post = new Post(row, questionText);
+                feedbackLabel.setText("Question submitted: " + questionText);
                 questionField.clear();
                 // Add the new question to the shared unresolved questions list.
-                unresolvedQuestionsList.add(baseQuestion);
+                unresolvedQuestionsList.add(post);
                 // Also add to the all questions list.
-                allQuestionsList.add(baseQuestion);
+                allQuestionsList.add(post);
+                row.id().whenCompleteAsync((id, ex) -> {
+                    if (ex == null) {
+                        refresh(post);
+                    } else {
+                        // Never saved: take it off the lists rather than leave it "saving" forever
+                        unresolvedQuestionsList.remove(post);
+                        allQuestionsList.remove(post);
+                        feedbackLabel.setText("Question could not be saved: " + ex.getMessage());
+                    }
+                }, Platform::runLater);
             }
         });
         
@@ -117,7 +172,7 @@ public class StudentHomePage {
         
         Label header = new Label("List of Unresolved Questions:");
         // Bind the ListView to the shared ObservableList.
-        ListView<String> questionListView = new ListView<>(unresolvedQuestionsList);
+        ListView<Post> questionListView = new ListView<>(unresolvedQuestionsList);
         
         layout.getChildren().addAll(header, questionListView);
         tab.setContent(layout);
@@ -132,30 +187,41 @@ public class StudentHomePage {
         
         Label instruction = new Label("Select a question and type your answer:");
         // Bind the question combo box to the shared unresolved questions list.
-        ComboBox<String> questionCombo = new ComboBox<>(unresolvedQuestionsList);
+        ComboBox<Post> questionCombo = new ComboBox<>(unresolvedQuestionsList);
         TextField answerField = new TextField();
         answerField.setPromptText("Type your answer here...");
         Button submitAnswerButton = new Button("Submit Answer");
         Label feedback = new Label();
         
         submitAnswerButton.setOnAction(e -> {
-            String question = questionCombo.getValue();
+            Post question = questionCombo.getValue();
             String answerText = answerField.getText().trim();
             if (question == null || answerText.isEmpty()) {
                 feedback.setText("Please select a question and provide an answer.");
+            } else if (answerText.length() > WriteBehindRepository.MAX_TEXT_LENGTH) {
+                feedback.setText("Answer cannot be longer than " + WriteBehindRepository.MAX_TEXT_LENGTH + " characters.");
             } else {
                 feedback.setText("Your answer has been submitted for: " + question);
                 answerField.clear();
+                WriteBehindRepository.Row answer = databaseHelper.writeBehind().submitAnswer(question.question, answerText, userName);
+                question.answer = answer;
+                question.answerText = answerText;
                 // Remove the answered question from the unresolved questions list.
                 unresolvedQuestionsList.remove(question);
                 // Also update the all questions list to show the answer.
-                for (int i = 0; i < allQuestionsList.size(); i++) {
-                    String entry = allQuestionsList.get(i);
-                    if (entry.equals(question)) {
-                        allQuestionsList.set(i, question + " | Answer: " + answerText);
-                        break;
+                refresh(question);
+                answer.id().whenCompleteAsync((id, ex) -> {
+                    if (ex != null && question.answer == answer) {
+                        // Never saved: put the question back among the unresolved ones
+                        question.answer = null;
+                        question.answerText = null;
+                        if (allQuestionsList.contains(question) && !unresolvedQuestionsList.contains(question)) {
+                            unresolvedQuestionsList.add(question);
+                        }
+                        refresh(question);
+                        feedback.setText("Answer could not be saved: " + ex.getMessage());
                     }
-                }
+                }, Platform::runLater);
             }
         });
         
@@ -171,7 +237,7 @@ public class StudentHomePage {
         layout.setPadding(new Insets(10));
         
         Label header = new Label("All Asked Questions and Their Answers:");
-        ListView<String> qaListView = new ListView<>(allQuestionsList);
+        ListView<Post> qaListView = new ListView<>(allQuestionsList);
         
         layout.getChildren().addAll(header, qaListView);
         tab.setContent(layout);
@@ -193,25 +259,30 @@ public class StudentHomePage {
         searchResults.setWrapText(true);
         
         searchButton.setOnAction(e -> {
-            String keyword = keywordField.getText().trim().toLowerCase();
+            String keyword = keywordField.getText().trim();
             if (keyword.isEmpty()) {
                 searchResults.setText("Please enter a keyword.");
-            } else {
-                StringBuilder results = new StringBuilder();
-                results.append("Search Results for '").append(keyword).append("':\n");
-                boolean found = false;
-                // Search within the allQuestionsList.
-                for (String entry : allQuestionsList) {
-                    if (entry.toLowerCase().contains(keyword)) {
-                        results.append(entry).append("\n");
-                        found = true;
-                    }
-                }
-                if (!found) {
-                    results.append("No matching questions found.\n");
-                }
-                searchResults.setText(results.toString());
+                return;
             }
+            // Ranked full-text search over the database; the first search also builds the index
+            searchResults.setText("Searching...");
+            databaseHelper.async().query("search:" + keyword, db -> db.search(keyword, SEARCH_RESULTS))
+                    .whenComplete((hits, ex) -> {
+                        StringBuilder results = new StringBuilder();
+                        results.append("Search Results for '").append(keyword).append("':\n");
+                        if (ex != null) {
+                            results.append("Error searching the database.\n");
+                            ex.printStackTrace();
+                        } else if (hits.isEmpty()) {
+                            results.append("No matching questions found.\n");
+                        } else {
+                            for (SearchIndex.Hit hit : hits) {
+                                results.append(hit.getKind() == SearchIndex.Kind.QUESTION ? "Q" : "A")
+                                        .append(hit.getId()).append(": ").append(hit.getSnippet()).append("\n");
+                            }
+                        }
+                        searchResults.setText(results.toString());
+                    });
         });
         
         layout.getChildren().addAll(instruction, keywordField, searchButton, searchResults);
@@ -227,15 +298,17 @@ public class StudentHomePage {
         
         Label instruction = new Label("Select a question to delete:");
         // ListView showing all questions (and answers if available)
-        ListView<String> deleteListView = new ListView<>(allQuestionsList);
+        ListView<Post> deleteListView = new ListView<>(allQuestionsList);
         Button deleteButton = new Button("Delete Selected");
         Label feedbackLabel = new Label();
         
         deleteButton.setOnAction(e -> {
-            String selected = deleteListView.getSelectionModel().getSelectedItem();
+            Post selected = deleteListView.getSelectionModel().getSelectedItem();
             if (selected == null) {
                 feedbackLabel.setText("Please select a question/answer to delete.");
             } else {
+                // Deleting the question deletes its answer with it.
+                databaseHelper.writeBehind().delete(selected.question);
                 // Remove the selected item from both lists.
                 allQuestionsList.remove(selected);
                 unresolvedQuestionsList.remove(selected);
@@ -256,14 +329,14 @@ public class StudentHomePage {
         layout.setAlignment(Pos.CENTER_LEFT);
 
         Label instruction = new Label("Select a Question or Answer to Edit:");
-        ListView<String> editListView = new ListView<>(allQuestionsList);
+        ListView<Post> editListView = new ListView<>(allQuestionsList);
         TextField editField = new TextField();
         editField.setPromptText("Edit your selected question or answer here...");
         Button updateButton = new Button("Update");
         Label feedbackLabel = new Label();
 
         updateButton.setOnAction(e -> {
-            String selected = editListView.getSelectionModel().getSelectedItem();
+            Post selected = editListView.getSelectionModel().getSelectedItem();
             String newText = editField.getText().trim();
 
             if (selected == null) {
@@ -276,29 +349,20 @@ public class StudentHomePage {
                 return;
             }
 
-            try {
-                int id = extractQuestionId(selected);
-                databaseHelper.updateQuestion(id, newText);
-                allQuestionsList.set(editListView.getSelectionModel().getSelectedIndex(), "Q" + id + ": " + newText);
-                feedbackLabel.setText("Updated successfully.");
-            } catch (SQLException ex) {
-                feedbackLabel.setText("Error updating.");
-                ex.printStackTrace();
+            if (newText.length() > WriteBehindRepository.MAX_TEXT_LENGTH) {
+                feedbackLabel.setText("Edited text cannot be longer than " + WriteBehindRepository.MAX_TEXT_LENGTH + " characters.");
+                return;
             }
+
+            // Rapid edits to the same question are merged before they are written.
+            databaseHelper.writeBehind().update(selected.question, newText);
+            selected.text = newText;
+            refresh(selected);
+            feedbackLabel.setText("Updated successfully.");
         });
 
         layout.getChildren().addAll(instruction, editListView, editField, updateButton, feedbackLabel);
         tab.setContent(layout);
         return tab;
     }
-
-    // Extracts the question ID from a given string
-    private int extractQuestionId(String questionText) {
-        String[] parts = questionText.split(":");
-        try {
-            return Integer.parseInt(parts[0].replace("Q", "").trim());
-        } catch (NumberFormatException e) {
-            return -1; // Invalid ID
-        }
-    }
 }
@@ -0,0 +1,21 @@
+package databasePart1;
+
+import java.sql.SQLException;
+
+
+/**
+ * Wraps an SQLException where the surrounding API cannot declare it, such as inside a Stream
+ * or a CompletableFuture. The original exception is available from getCause().
+ */
+public class UncheckedSQLException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedSQLException(SQLException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+}
@@ -0,0 +1,163 @@
+package databasePart1;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The UserCache class remembers whether a userName exists and what its role is, so that the
+ * lookups made on every login attempt, OTP request and user management action do not each cost
+ * a database round trip.
+ *
+ * It is a read-through cache: a miss loads the entry from the database and keeps it. Entries
+ * expire after a fixed time, and the least recently used entry is dropped when the cache is full.
+ * Unknown userNames are cached too (with a shorter lifetime), so repeated attempts at a name that
+ * does not exist are also answered from memory. DatabaseHelper invalidates a userName whenever it
+ * registers, deletes or changes the role of that user.
+ */
+public class UserCache {
+
+	/**
+	 * What the database said about one userName.
+	 */
+	public static final class Entry {
+		static final Entry MISSING = new Entry(false, null);
+
+		public final boolean exists;
+		public final String role;    // null when the user does not exist
+
+		Entry(boolean exists, String role) {
+			this.exists = exists;
+			this.role = role;
+		}
+	}
+
+	// Loads an entry from the database on a miss.
+	interface Loader {
+		Entry load(String userName) throws SQLException;
+	}
+
+	/**
+	 * A snapshot of the cache counters.
+	 */
+	public static final class Stats {
+		public final long hits;
+		public final long misses;
+		public final long evictions;       // Dropped to stay within the size limit
+		public final long expirations;     // Found expired on lookup
+		public final long invalidations;
+		public final int size;
+
+		Stats(long hits, long misses, long evictions, long expirations, long invalidations, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.expirations = expirations;
+			this.invalidations = invalidations;
+			this.size = size;
+		}
+
+		public double hitRate() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("UserCache[size=%d, hits=%d, misses=%d, hitRate=%.2f, evictions=%d, expirations=%d, invalidations=%d]",
+					size, hits, misses, hitRate(), evictions, expirations, invalidations);
+		}
+	}
+
+	// A cached entry and when it stops being valid.
+	private static final class Slot {
+		final Entry entry;
+		final long expiresAt;
+
+		Slot(Entry entry, long expiresAt) {
+			this.entry = entry;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final long negativeTtlNanos;
+
+	// Access-ordered, so the first entry is the least recently used. Guarded by this.
+	private final LinkedHashMap<String, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+	// Bumped by every invalidation; a load that overlaps one does not store its result
+	private long invalidationCount;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	private long invalidations;
+
+	public UserCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1.");
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis * 1_000_000;
+		this.negativeTtlNanos = negativeTtlMillis * 1_000_000;
+	}
+
+	/**
+	 * Returns the cached entry for a userName, loading it on a miss. If the load fails, the
+	 * exception is passed on and nothing is cached.
+	 */
+	Entry get(String userName, Loader loader) throws SQLException {
+		long startCount;
+		synchronized (this) {
+			Slot slot = slots.get(userName);
+			if (slot != null) {
+				if (System.nanoTime() - slot.expiresAt < 0) {
+					hits++;
+					return slot.entry;
+				}
+				slots.remove(userName);
+				expirations++;
+			}
+			misses++;
+			startCount = invalidationCount;
+		}
+
+		// Load outside the lock so one slow query does not hold up every other lookup
+		Entry entry = loader.load(userName);
+
+		synchronized (this) {
+			if (invalidationCount == startCount) {
+				long ttl = entry.exists ? ttlNanos : negativeTtlNanos;
+				slots.put(userName, new Slot(entry, System.nanoTime() + ttl));
+				Iterator<Map.Entry<String, Slot>> eldest = slots.entrySet().iterator();
+				while (slots.size() > maxSize) {
+					eldest.next();
+					eldest.remove();
+					evictions++;
+				}
+			}
+		}
+		return entry;
+	}
+
+	// Forgets a userName, so its next lookup reads the database.
+	public synchronized void invalidate(String userName) {
+		invalidationCount++;
+		invalidations++;
+		slots.remove(userName);
+	}
+
+	public synchronized void clear() {
+		invalidationCount++;
+		invalidations += slots.size();
+		slots.clear();
+	}
+
+	public synchronized Stats getStats() {
+		return new Stats(hits, misses, evictions, expirations, invalidations, slots.size());
+	}
+}
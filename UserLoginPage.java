@@ -49,42 +49,64 @@ public class UserLoginPage {
             String userName = userNameField.getText();
             if (userName.isEmpty()) {
                 errorLabel.setText("Please enter your username to request OTP.");
-            } else if (!databaseHelper.doesUserExist(userName)) {
-                errorLabel.setText("User does not exist.");
-            } else {
-				String otp = databaseHelper.generateOTP(userName);  // Generate and store OTP
-                errorLabel.setText("OTP has been generated. Please check with the admin.");
+                return;
             }
+            // The user lookup and the OTP store both go to the database, so this runs off the JavaFX thread
+            requestOtpButton.setDisable(true);
+            errorLabel.setText("");
+            databaseHelper.async().execute(db -> {
+                if (!db.doesUserExist(userName)) {
+                    return false;
+                }
+                db.generateOTP(userName);  // Generate and store OTP
+                return true;
+            }).whenComplete((generated, ex) -> {
+                requestOtpButton.setDisable(false);
+                if (ex != null) {
+                    errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                    ex.printStackTrace();
+                } else if (generated) {
+                    errorLabel.setText("OTP has been generated. Please check with the admin.");
+                } else {
+                    errorLabel.setText("User does not exist.");
+                }
+            });
         });
 
         loginButton.setOnAction(a -> {
             String userName = userNameField.getText();
             String passwordOrOtp = passwordOrOtpField.getText();
 
-            // If user has clicked "Forgot Password," validate OTP instead of normal password
-            if (requestOtpButton.isVisible() && databaseHelper.hasOTP(userName)) {
-                if (databaseHelper.validateOTP(userName, passwordOrOtp)) {
-                    databaseHelper.clearOTP(userName);  // Clear the OTP after successful verification
+            // The OTP and password checks run off the JavaFX thread; the button stays disabled until they finish
+            loginButton.setDisable(true);
+            errorLabel.setText("");
+
+            // If user has clicked "Forgot Password," validate OTP instead of normal password.
+            if (!requestOtpButton.isVisible()) {
+                passwordLogin(primaryStage, userName, passwordOrOtp, loginButton, errorLabel);
+                return;
+            }
+            // null when the user has no OTP waiting, so the normal password login applies
+            databaseHelper.async().execute(db -> {
+                if (!db.hasOTP(userName)) {
+                    return null;
+                }
+                return db.validateOTP(userName, passwordOrOtp);  // Uses the OTP up
+            }).whenComplete((otpValid, ex) -> {
+                if (ex != null) {
+                    loginButton.setDisable(false);
+                    errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                    ex.printStackTrace();
+                } else if (otpValid == null) {
+                    passwordLogin(primaryStage, userName, passwordOrOtp, loginButton, errorLabel);
+                } else if (otpValid) {
                     ResetPasswordPage resetPasswordPage = new ResetPasswordPage(primaryStage, databaseHelper, userName);
                     resetPasswordPage.show();  // Redirect to reset password page
                 } else {
+                    loginButton.setDisable(false);
                     errorLabel.setText("Invalid OTP or OTP has expired.");
                 }
-            } else {
-                // Normal login flow with username and password
-                try {
-                    String role = databaseHelper.getUserRole(userName);
-                    if (role != null && databaseHelper.login(new User(userName, passwordOrOtp, role))) {
-                        WelcomeLoginPage welcomeLoginPage = new WelcomeLoginPage(databaseHelper);
-                        welcomeLoginPage.show(primaryStage, new User(userName, passwordOrOtp, role));
-                    } else {
-                        errorLabel.setText("Incorrect username or password.");
-                    }
-                } catch (Exception ex) {
-                    errorLabel.setText("An error occurred: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
+            });
         });
 
         // Layout setup
@@ -94,4 +116,20 @@ public class UserLoginPage {
         layout.setStyle("-fx-padding: 20; -fx-alignment: center;");
         primaryStage.setScene(new Scene(layout, 800, 400));
     }
+
+    // Normal login flow with username and password
+    private void passwordLogin(Stage primaryStage, String userName, String password, Button loginButton, Label errorLabel) {
+        databaseHelper.async().login(userName, password).whenComplete((result, ex) -> {
+            loginButton.setDisable(false);
+            if (ex != null) {
+                errorLabel.setText("An error occurred: " + AsyncDatabaseHelper.unwrap(ex).getMessage());
+                ex.printStackTrace();
+            } else if (result.isSuccess()) {
+                WelcomeLoginPage welcomeLoginPage = new WelcomeLoginPage(databaseHelper);
+                welcomeLoginPage.show(primaryStage, new User(userName, password, result.getRole()));
+            } else {
+                errorLabel.setText("Incorrect username or password.");
+            }
+        });
+    }
 }
\ No newline at end of file
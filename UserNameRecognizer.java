@@ -1,267 +1,248 @@
 package application;
 
+import java.io.PrintStream;
+
 
 public class UserNameRecognizer {
 	/**
 	 * <p> Title: FSM-translated UserNameRecognizer. </p>
-	 * 
-	 * <p> Description: A demonstration of the mechanical translation of Finite State Machine 
-	 * diagram into an executable Java program using the UserName Recognizer. The code 
-	 * detailed design is based on a while loop with a select list</p>
-	 * 
+	 *
+	 * <p> Description: A demonstration of the mechanical translation of Finite State Machine
+	 * diagram into an executable Java program using the UserName Recognizer. The diagram is
+	 * compiled into a transition table indexed by state and character class, and the recognizer
+	 * walks the input through that table.</p>
+	 *
+	 * <p> The recognizer keeps no state between calls: the tables are built once and never
+	 * change, and each check works only with its own local variables, so any number of threads
+	 * may validate UserNames at the same time. A valid UserName is recognized without creating
+	 * any objects. The execution trace is off unless a PrintStream is passed to check(), or the
+	 * application is started with -Dcse360.traceUserName=true.</p>
+	 *
 	 * <p> Copyright: Lynn Robert Carter © 2024 </p>
-	 * 
+	 *
 	 * @author Lynn Robert Carter
-	 * 
+	 *
 	 * @version 1.00		2024-09-13	Initial baseline derived from the Even Recognizer
 	 * @version 1.01		2024-09-17	Correction to address UNChar coding error, improper error
 	 * 									message, and improve internal documentation
-	 * 
+	 * @version 2.00		2026-10-18	Table-driven FSM without static state; results returned
+	 * 									as a Result object; tracing made optional
+	 *
+	 */
+
+	/**********************************************************************************************
+	 *
+	 * The outcome of checking one UserName: the error message and the index of the character
+	 * where the error was found, for GUI applications that point the user at the mistake.
+	 *
 	 */
+	public static final class Result {
+		private final int indexOfError;			// -1 when the UserName is valid
+		private final String errorMessage;		// Empty when the UserName is valid
+
+		private Result(int indexOfError, String errorMessage) {
+			this.indexOfError = indexOfError;
+			this.errorMessage = errorMessage;
+		}
+
+		public boolean isValid() {
+			return indexOfError < 0;
+		}
+
+		public int getIndexOfError() {
+			return indexOfError;
+		}
+
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return isValid() ? "Result [valid]" : "Result [indexOfError=" + indexOfError + ", errorMessage="
+					+ errorMessage.trim() + "]";
+		}
+	}
 
 	/**********************************************************************************************
-	 * 
-	 * Result attributes to be used for GUI applications where a detailed error message and a 
-	 * pointer to the character of the error will enhance the user experience.
-	 * 
+	 *
+	 * Result attributes kept for callers written against version 1.01. They hold the outcome of
+	 * the most recent checkForValidUserName call on any thread, so new code should use the
+	 * Result returned by check() instead.
+	 *
 	 */
 
+	@Deprecated
 	public static String userNameRecognizerErrorMessage = "";	// The error message text
+	@Deprecated
 	public static String userNameRecognizerInput = "";			// The input being processed
+	@Deprecated
 	public static int userNameRecognizerIndexofError = -1;		// The index of error location
-	private static int state = 0;						// The current state value
-	private static int nextState = 0;					// The next state value
-	private static boolean finalState = false;			// Is this state a final state?
-	private static String inputLine = "";				// The input line
-	private static char currentChar;					// The current character in the line
-	private static int currentCharNdx;					// The index of the current character
-	private static boolean running;						// The flag that specifies if the FSM is 
-														// running
-	private static int userNameSize = 0;			// A numeric value may not exceed 16 characters
 
-	// Private method to display debugging data
-	private static void displayDebuggingInfo() {
-		// Display the current state of the FSM as part of an execution trace
-		if (currentCharNdx >= inputLine.length())
-			// display the line with the current state numbers aligned
-			System.out.println(((state > 99) ? " " : (state > 9) ? "  " : "   ") + state + 
-					((finalState) ? "       F   " : "           ") + "None");
-		else
-			System.out.println(((state > 99) ? " " : (state > 9) ? "  " : "   ") + state + 
-				((finalState) ? "       F   " : "           ") + "  " + currentChar + " " + 
-				((nextState > 99) ? "" : (nextState > 9) || (nextState == -1) ? "   " : "    ") + 
-				nextState + "     " + userNameSize);
-	}
-	
-	// Private method to move to the next character within the limits of the input line
-	private static void moveToNextCharacter() {
-		currentCharNdx++;
-		if (currentCharNdx < inputLine.length())
-			currentChar = inputLine.charAt(currentCharNdx);
-		else {
-			currentChar = ' ';
-			running = false;
+	// Turns the execution trace of checkForValidUserName on
+	static final boolean TRACE = Boolean.getBoolean("cse360.traceUserName");
+
+	private static final int MIN_SIZE = 4;				// A UserName has at least 4 characters
+	private static final int MAX_SIZE = 16;				// and no more than 16
+
+	// The character classes: the columns of the transition table
+	private static final int ALPHA = 0;					// A-Z, a-z
+	private static final int DIGIT = 1;					// 0-9
+	private static final int SPECIAL = 2;				// . - _
+	private static final int OTHER = 3;					// Anything else
+	private static final int CLASSES = 4;
+
+	// The states: the rows of the transition table
+	private static final int START = 0;					// Nothing read yet
+	private static final int NAME = 1;					// After a letter or digit; the final state
+	private static final int AFTER_SPECIAL = 2;			// After a period, minus sign or underscore
+	private static final int HALT = -1;					// No transition for this character
+
+	// NEXT[state * CLASSES + class] is the state the FSM moves to
+	private static final int[] NEXT = {
+		//	ALPHA	DIGIT	SPECIAL			OTHER
+			NAME,	HALT,	HALT,			HALT,	// START: the first character must be alphabetic
+			NAME,	NAME,	AFTER_SPECIAL,	HALT,	// NAME
+			NAME,	NAME,	HALT,			HALT,	// AFTER_SPECIAL: must be followed by A-Z, a-z, 0-9
+	};
+
+	// The class of every ASCII character; all others are OTHER
+	private static final byte[] CHARACTER_CLASS = new byte[128];
+	static {
+		for (int c = 0; c < 128; c++) {
+			CHARACTER_CLASS[c] = OTHER;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			CHARACTER_CLASS[c] = ALPHA;
+			CHARACTER_CLASS[Character.toLowerCase(c)] = ALPHA;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			CHARACTER_CLASS[c] = DIGIT;
 		}
+		CHARACTER_CLASS['.'] = SPECIAL;
+		CHARACTER_CLASS['-'] = SPECIAL;
+		CHARACTER_CLASS['_'] = SPECIAL;
 	}
 
+	// The error messages, unchanged from version 1.01
+	private static final String ERROR = "\n*** ERROR *** ";
+	private static final String EMPTY_MESSAGE = ERROR + "The input is empty";
+	private static final String START_MESSAGE = ERROR + "A UserName must start with A-Z, or a-z.\n";
+	private static final String TOO_SHORT_MESSAGE = ERROR + "A UserName must have at least 4 characters.\n";
+	private static final String TOO_LONG_MESSAGE = ERROR + "A UserName must have no more than 16 character.\n";
+	private static final String INVALID_CHARACTER_MESSAGE = ERROR
+			+ "A UserName must contain only valid characters: A-Z, a-z, 0-9, '.', '-', '_'.\n";
+	private static final String AFTER_SPECIAL_MESSAGE = ERROR
+			+ "A UserName character after a special character must be A-Z, a-z, 0-9.\n";
+
+	private static final Result VALID = new Result(-1, "");
+	private static final Result EMPTY = new Result(0, EMPTY_MESSAGE);
+
 	/**********
-	 * This method is a mechanical transformation of a Finite State Machine diagram into a Java
-	 * method.
-	 * 
+	 * Checks a UserName without tracing.
+	 *
 	 * @param input		The input string for the Finite State Machine
-	 * @return			An output string that is empty if every things is okay or it is a String
-	 * 						with a helpful description of the error
+	 * @return			The Result; shared and unchanging when the UserName is valid
 	 */
-	public static String checkForValidUserName(String input) {
+	public static Result check(String input) {
+		return check(input, null);
+	}
+
+	/**********
+	 * Runs the Finite State Machine over the input, one table lookup per character.
+	 *
+	 * The FSM halts at the first character with no transition, or once the UserName has grown
+	 * past 16 characters. The state it halts in, the number of characters counted and whether
+	 * the whole input was read then decide the error, exactly as in version 1.01.
+	 *
+	 * @param input		The input string for the Finite State Machine
+	 * @param trace		Where to print the execution trace, or null for none
+	 * @return			The Result; shared and unchanging when the UserName is valid
+	 */
+	public static Result check(String input, PrintStream trace) {
 		// Check to ensure that there is input to process
-		if(input.length() <= 0) {
-			userNameRecognizerIndexofError = 0;	// Error at first character;
-			return "\n*** ERROR *** The input is empty";
+		int length = input.length();
+		if (length == 0) {
+			return EMPTY;
+		}
+		if (trace != null) {
+			trace.println("\nCurrent Final Input  Next  Name\nState   State Char  State  Size");
 		}
-		
-		// The local variables used to perform the Finite State Machine simulation
-		state = 0;							// This is the FSM state number
-		inputLine = input;					// Save the reference to the input line as a global
-		currentCharNdx = 0;					// The index of the current character
-		currentChar = input.charAt(0);		// The current character from above indexed position
-
-		// The Finite State Machines continues until the end of the input is reached or at some 
-		// state the current character does not match any valid transition to a next state
-
-		userNameRecognizerInput = input;	// Save a copy of the input
-		running = true;						// Start the loop
-		nextState = -1;						// There is no next state
-		System.out.println("\nCurrent Final Input  Next  Date\nState   State Char  State  Size");
-		
-		// This is the place where semantic actions for a transition to the initial state occur
-		
-		userNameSize = 0;					// Initialize the UserName size
 
-		// The Finite State Machines continues until the end of the input is reached or at some 
-		// state the current character does not match any valid transition to a next state
-		while (running) {
-			// The switch statement takes the execution to the code for the current state, where
-			// that code sees whether or not the current character is valid to transition to a
-			// next state
-			switch (state) {
-			case 0: 
-				// State 0 has 1 valid transition that is addressed by an if statement.
-				
-				// The current character is checked against A-Z, a-z. If any are matched
-				// the FSM goes to state 1
-				
-				// According to the new FSM, the first char should be only Alphabetics
-				// A-Z, a-z -> State 1
-				if ((currentChar >= 'A' && currentChar <= 'Z' ) ||		// Check for A-Z
-						(currentChar >= 'a' && currentChar <= 'z' )){	// Check for a-z
-					nextState = 1;
-					
-					// Count the character 
-					userNameSize++;
-					
-					// This only occurs once, so there is no need to check for the size getting
-					// too large.
-				}
-				// If it is none of those characters, the FSM halts
-				else 
-					running = false;
-				
-				// The execution of this state is finished
+		int state = START;
+		int size = 0;							// Characters counted into the UserName
+		int index = 0;							// The index of the current character
+		for (; index < length; index++) {
+			char currentChar = input.charAt(index);
+			int characterClass = currentChar < 128 ? CHARACTER_CLASS[currentChar] : OTHER;
+			int nextState = NEXT[state * CLASSES + characterClass];
+			if (trace != null) {
+				traceStep(trace, state, currentChar, nextState, nextState == HALT ? size : size + 1);
+			}
+			if (nextState == HALT) {
 				break;
-			
-			case 1: 
-				// State 1 has two valid transitions, according to the new FSM
-				//	1: a A-Z, a-z, 0-9 that transitions back to state 1
-				//  2: a period, minus sign, and underscore that transitions to state 2 
-
-				
-				// A-Z, a-z, 0-9 -> State 1
-				if ((currentChar >= 'A' && currentChar <= 'Z' ) ||		// Check for A-Z
-						(currentChar >= 'a' && currentChar <= 'z' ) ||	// Check for a-z
-						(currentChar >= '0' && currentChar <= '9' )) {	// Check for 0-9
-					nextState = 1;
-					
-					// Count the character
-					userNameSize++;
-				}
-				// . - _ -> State 2
-				else if (currentChar == '.' || currentChar == '-' || currentChar == '_') {							// Check for /
-					nextState = 2;
-					
-					// Count the . - _
-					userNameSize++;
-				}				
-				// If it is none of those characters, the FSM halts
-				else
-					running = false;
-				
-				// The execution of this state is finished
-				// If the size is larger than 16, the loop must stop
-				if (userNameSize > 16)
-					running = false;
-				break;			
-				
-			case 2: 
-				// State 2 deals with a character after a period in the user-name.
-				
-				// A-Z, a-z, 0-9 -> State 1
-				if ((currentChar >= 'A' && currentChar <= 'Z' ) ||		// Check for A-Z
-						(currentChar >= 'a' && currentChar <= 'z' ) ||	// Check for a-z
-						(currentChar >= '0' && currentChar <= '9' )) {	// Check for 0-9
-					nextState = 1;
-					
-					// Count the odd digit
-					userNameSize++;
-					
-				}
-				// If it is none of those characters, the FSM halts
-				else 
-					running = false;
-
-				// The execution of this state is finished
-				// If the size is larger than 16, the loop must stop
-				if (userNameSize > 16)
-					running = false;
-				break;			
 			}
-			
-			if (running) {
-				displayDebuggingInfo();
-				// When the processing of a state has finished, the FSM proceeds to the next
-				// character in the input and if there is one, it fetches that character and
-				// updates the currentChar.  If there is no next character the currentChar is
-				// set to a blank.
-				moveToNextCharacter();
-
-				// Move to the next state
-				state = nextState;
-				
-				// Is the new state a final state?  If so, signal this fact.
-				if (state == 1) finalState = true;
-
-				// Ensure that one of the cases sets this to a valid value
-				nextState = -1;
+			// A UserName that grows too long halts on the character that made it so, still in
+			// the state that character was read in
+			if (++size > MAX_SIZE) {
+				break;
 			}
-			// Should the FSM get here, the loop starts again
-	
+			state = nextState;
+		}
+		if (trace != null) {
+			if (index >= length) {
+				trace.println("   " + state + finalStateColumn(state) + "None");
+			}
+			trace.println("The loop has ended.");
 		}
-		displayDebuggingInfo();
-		
-		System.out.println("The loop has ended.");
-		
-		// When the FSM halts, we must determine if the situation is an error or not.  That depends
-		// of the current state of the FSM and whether or not the whole string has been consumed.
-		// This switch directs the execution to separate code for each of the FSM states and that
-		// makes it possible for this code to display a very specific error message to improve the
-		// user experience.
-		userNameRecognizerIndexofError = currentCharNdx;	// Set index of a possible error;
-		userNameRecognizerErrorMessage = "\n*** ERROR *** ";
-		
-		// The following code is a slight variation to support just console output.
-		switch (state) {
-		case 0:
-			// State 0 is not a final state, so we can return a very specific error message
-			userNameRecognizerErrorMessage += "A UserName must start with A-Z, or a-z.\n";
-			return userNameRecognizerErrorMessage;
 
-		case 1:
-			// State 1 is a final state.  Check to see if the UserName length is valid.  If so we
-			// we must ensure the whole string has been consumed.
+		// When the FSM halts, the state it is in decides the error message
+		switch (state) {
+		case START:
+			return new Result(index, START_MESSAGE);
 
-			if (userNameSize < 4) {
-				// UserName is too small
-				userNameRecognizerErrorMessage += "A UserName must have at least 4 characters.\n";
-				return userNameRecognizerErrorMessage;
-			}
-			else if (userNameSize > 16) {
-				// UserName is too long
-				userNameRecognizerErrorMessage += 
-					"A UserName must have no more than 16 character.\n";
-				return userNameRecognizerErrorMessage;
+		case NAME:
+			// The final state: the length must be valid and the whole input consumed
+			if (size < MIN_SIZE) {
+				return new Result(index, TOO_SHORT_MESSAGE);
 			}
-			else if (currentCharNdx < input.length()) {
-				// There are characters remaining in the input, so the input is not valid
-				userNameRecognizerErrorMessage += 
-					"A UserName must contain only valid characters: A-Z, a-z, 0-9, '.', '-', '_'.\n";
-				return userNameRecognizerErrorMessage;
+			else if (size > MAX_SIZE) {
+				return new Result(index, TOO_LONG_MESSAGE);
 			}
-			else {
-					// UserName is valid
-					userNameRecognizerIndexofError = -1;
-					userNameRecognizerErrorMessage = "";
-					return userNameRecognizerErrorMessage;
+			else if (index < length) {
+				return new Result(index, INVALID_CHARACTER_MESSAGE);
 			}
+			return VALID;
 
-		case 2:
-			// State 2 is not a final state, so we can return a very specific error message
-			userNameRecognizerErrorMessage +=
-				"A UserName character after a special character must be A-Z, a-z, 0-9.\n";
-			return userNameRecognizerErrorMessage;
-			
 		default:
-			// This is for the case where we have a state that is outside of the valid range.
-			// This should not happen
-			return "";
+			return new Result(index, AFTER_SPECIAL_MESSAGE);
 		}
 	}
+
+	/**********
+	 * Checks a UserName, as in version 1.01.
+	 *
+	 * @param input		The input string for the Finite State Machine
+	 * @return			An output string that is empty if every things is okay or it is a String
+	 * 						with a helpful description of the error
+	 */
+	public static String checkForValidUserName(String input) {
+		Result result = check(input, TRACE ? System.out : null);
+		userNameRecognizerIndexofError = result.getIndexOfError();
+		if (input.length() > 0) {
+			userNameRecognizerInput = input;
+			userNameRecognizerErrorMessage = result.getErrorMessage();
+		}
+		return result.getErrorMessage();
+	}
+
+	// Prints one line of the execution trace, with the state numbers aligned
+	private static void traceStep(PrintStream trace, int state, char currentChar, int nextState, int size) {
+		trace.println("   " + state + finalStateColumn(state) + "  " + currentChar + " "
+				+ ((nextState == HALT) ? "   " : "    ") + nextState + "     " + size);
+	}
+
+	private static String finalStateColumn(int state) {
+		return (state == NAME) ? "       F   " : "           ";
+	}
 }
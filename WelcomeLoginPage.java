@@ -41,7 +41,7 @@ public class WelcomeLoginPage {
             } else if(role.equals("user")) {
                 new UserHomePage(databaseHelper).show(primaryStage);
             } else if(role.equals("student")) {
-                new StudentHomePage(databaseHelper).show(primaryStage);
+                new StudentHomePage(databaseHelper, user.getUserName()).show(primaryStage);
             }
         });
         
@@ -65,7 +65,7 @@ public class WelcomeLoginPage {
             MenuItem userItem = new MenuItem("User");
             userItem.setOnAction(a -> new UserHomePage(databaseHelper).show(primaryStage));
             MenuItem studentItem = new MenuItem("Student");
-            studentItem.setOnAction(a -> new StudentHomePage(databaseHelper).show(primaryStage));
+            studentItem.setOnAction(a -> new StudentHomePage(databaseHelper, user.getUserName()).show(primaryStage));
             switchRolesButton.getItems().addAll(adminItem, userItem, studentItem);
             
             // For admin, add welcome label, then admin-specific buttons, then common buttons.
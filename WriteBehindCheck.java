@@ -0,0 +1,181 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import application.Answer;
+import application.Question;
+
+/**
+ * Write-Behind Check
+ * This mainline checks how WriteBehindRepository merges and writes queued changes: each merge
+ * rule in its class comment, an answer whose question is deleted before either is written, a row
+ * the database refuses in the middle of a batch, and the retry limit.
+ *
+ * It runs against the IN_MEMORY storage profile. The repository under test never flushes on
+ * its own, so every change is merged exactly as queued here and written by an explicit flush.
+ */
+public class WriteBehindCheck {
+
+    // Long enough that only the explicit flushes below write anything
+    static final long NO_AUTOMATIC_FLUSH = 60 * 60 * 1000;
+
+    /**
+     * Insert then update: one insert with the new text.
+     */
+    public static void testInsertThenUpdate(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row row = repo.submitQuestion("First draft", "iu");
+        repo.update(row, "Final text");
+        check(repo.pendingCount() == 1, "one merged change waiting");
+        repo.flush().get();
+        List<Question> saved = db.getQuestionsByUser("iu");
+        check(saved.size() == 1 && saved.get(0).getText().equals("Final text"), "one question with the new text");
+        check(row.id().get() == saved.get(0).getId(), "the row has the database id");
+        System.out.println("testInsertThenUpdate passed.");
+    }
+
+    /**
+     * Insert then delete: nothing is written, and the row's id fails with a cancellation.
+     */
+    public static void testInsertThenDelete(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row row = repo.submitQuestion("Never saved", "id");
+        repo.delete(row);
+        check(repo.pendingCount() == 0, "nothing waiting");
+        repo.flush().get();
+        check(db.getQuestionsByUser("id").isEmpty(), "no question written");
+        check(failsWith(row, CancellationException.class), "the id is cancelled");
+        System.out.println("testInsertThenDelete passed.");
+    }
+
+    /**
+     * Update then update: only the last update. Update then delete: only the delete.
+     */
+    public static void testUpdates(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row first = repo.submitQuestion("Original", "uu");
+        WriteBehindRepository.Row second = repo.submitQuestion("Doomed", "uu");
+        repo.flush().get();
+        repo.update(first, "Edit one");
+        repo.update(first, "Edit two");
+        repo.update(second, "Edited before deleting");
+        repo.delete(second);
+        check(repo.pendingCount() == 2, "one merged change per row");
+        repo.flush().get();
+        List<Question> saved = db.getQuestionsByUser("uu");
+        check(saved.size() == 1 && saved.get(0).getText().equals("Edit two"), "last update kept, deleted row gone");
+        System.out.println("testUpdates passed.");
+    }
+
+    /**
+     * An answer to a question that is deleted before either is written is not written either.
+     */
+    public static void testAnswerToDeletedQuestion(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row question = repo.submitQuestion("Asked and withdrawn", "aq");
+        WriteBehindRepository.Row answer = repo.submitAnswer(question, "Answered too late", "aq");
+        repo.delete(question);
+        repo.flush().get();
+        check(db.getQuestionsByUser("aq").isEmpty(), "no question written");
+        check(db.getAnswersByUser("aq").isEmpty(), "no answer written");
+        check(failsWith(answer, CancellationException.class), "the answer's id is cancelled");
+        System.out.println("testAnswerToDeletedQuestion passed.");
+    }
+
+    /**
+     * A row the database refuses fails on its own; the rest of its batch, including an answer
+     * to a question in the same batch, is written.
+     */
+    public static void testRefusedRow(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row question = repo.submitQuestion("Good question", "rr");
+        WriteBehindRepository.Row answer = repo.submitAnswer(question, "Good answer", "rr");
+        WriteBehindRepository.Row orphan = repo.submitAnswer(repo.existingQuestion(987654, "nobody"),
+                "Answer to a question that does not exist", "rr");
+        WriteBehindRepository.Row later = repo.submitQuestion("Queued after the bad row", "rr");
+        repo.flush().get();
+        check(failsWith(orphan, SQLException.class), "the orphan answer is refused");
+        check(question.id().isDone() && answer.id().isDone() && later.id().isDone()
+                && !question.id().isCompletedExceptionally() && !answer.id().isCompletedExceptionally()
+                && !later.id().isCompletedExceptionally(), "the other rows have ids");
+        check(db.getQuestionsByUser("rr").size() == 2, "both questions written");
+        List<Answer> answers = db.getAnswersByUser("rr");
+        check(answers.size() == 1 && answers.get(0).getQuestionId() == question.getId(), "the good answer written");
+        try {
+            repo.submitQuestion(new String(new char[WriteBehindRepository.MAX_TEXT_LENGTH + 1]).replace('\0', 'x'), "rr");
+            throw new AssertionError("Expected over-length text to be refused.");
+        } catch (IllegalArgumentException e) {
+            // Refused before it could reach a batch
+        }
+        System.out.println("testRefusedRow passed.");
+    }
+
+    /**
+     * A failure that is not the row's fault is retried MAX_ATTEMPTS times before the row is
+     * given up on. Rows ahead of it in the batch are written meanwhile.
+     */
+    public static void testRetryLimit(DatabaseHelper db, WriteBehindRepository repo) throws Exception {
+        WriteBehindRepository.Row question = repo.submitQuestion("Written before the failure", "rl");
+        WriteBehindRepository.Row answer = repo.submitAnswer(repo.existingQuestion(1, "someone"), "Stuck", "rl");
+        execute(db, "ALTER TABLE answers RENAME TO answers_away");
+        try {
+            for (int attempt = 1; attempt <= WriteBehindRepository.MAX_ATTEMPTS; attempt++) {
+                check(!answer.id().isDone(), "still retrying before attempt " + attempt);
+                repo.flush().get();
+            }
+        } finally {
+            execute(db, "ALTER TABLE answers_away RENAME TO answers");
+        }
+        check(question.id().isDone() && !question.id().isCompletedExceptionally(), "the question was written");
+        check(failsWith(answer, SQLException.class), "the answer is given up on after the last attempt");
+        check(repo.pendingCount() == 0, "nothing left waiting");
+        System.out.println("testRetryLimit passed.");
+    }
+
+    private static boolean failsWith(WriteBehindRepository.Row row, Class<? extends Exception> type)
+            throws InterruptedException {
+        try {
+            row.id().get();
+            return false;
+        } catch (CancellationException e) {
+            return type.isInstance(e);
+        } catch (ExecutionException e) {
+            return type.isInstance(e.getCause());
+        }
+    }
+
+    private static void execute(DatabaseHelper db, String sql) throws SQLException {
+        try (Connection connection = db.borrowConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed: " + what);
+        }
+    }
+
+    /**
+     * Mainline to run all checks.
+     */
+    public static void main(String[] args) throws Exception {
+        DatabaseHelper db = new DatabaseHelper();
+        db.setStorageProfile(StorageProfile.IN_MEMORY);
+        db.connectToDatabase();
+        WriteBehindRepository repo = new WriteBehindRepository(db, NO_AUTOMATIC_FLUSH);
+        try {
+            testInsertThenUpdate(db, repo);
+            testInsertThenDelete(db, repo);
+            testUpdates(db, repo);
+            testAnswerToDeletedQuestion(db, repo);
+            testRefusedRow(db, repo);
+            testRetryLimit(db, repo);
+        } finally {
+            repo.close();
+            db.closeConnection();
+        }
+        System.out.println("Write-behind check completed.");
+    }
+}
@@ -0,0 +1,477 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import application.Answer;
+import application.Question;
+
+
+/**
+ * The WriteBehindRepository class saves questions and answers without making the caller wait
+ * for the database. Each submit, edit or delete is queued and returns at once; a background
+ * thread writes the queue every FLUSH_INTERVAL_MILLIS (sooner once MAX_BATCH changes are waiting),
+ * all in one transaction with JDBC batches.
+ *
+ * A new post is represented by a Row whose id is filled in from the database's generated key
+ * once its insert commits. Changes to the same row made before it is written are merged:
+ * <ul>
+ *   <li>insert then update: one insert with the new text</li>
+ *   <li>insert then delete: nothing is written</li>
+ *   <li>update then update: only the last update</li>
+ *   <li>update then delete: only the delete</li>
+ * </ul>
+ * A batch that fails is written again one row at a time, so a row the database refuses fails on its
+ * own (its id future completes exceptionally) without losing the rest. If the database cannot be
+ * reached at all, what is left is put back in front of newer changes and retried, up to
+ * MAX_ATTEMPTS times.
+ */
+public class WriteBehindRepository {
+
+	static final long FLUSH_INTERVAL_MILLIS = 200;
+	static final int MAX_BATCH = 500;
+	static final int MAX_ATTEMPTS = 3;
+	public static final int MAX_TEXT_LENGTH = 1000; // The text columns are VARCHAR(1000)
+
+	private final DatabaseHelper databaseHelper;
+	private final ScheduledExecutorService flusher;
+
+	// Changes waiting to be written, one per row, in the order the rows were first changed.
+	// Guarded by this.
+	private LinkedHashMap<Row, Change> pending = new LinkedHashMap<>();
+	private boolean flushRequested; // A flush ahead of the schedule is already queued; guarded by this
+	private boolean closed;         // Guarded by this
+
+	public WriteBehindRepository(DatabaseHelper databaseHelper) {
+		this(databaseHelper, FLUSH_INTERVAL_MILLIS);
+	}
+
+	// Flushes on its own every flushIntervalMillis; WriteBehindCheck uses a long interval and
+	// flushes by hand, so that changes are merged exactly as it queued them.
+	WriteBehindRepository(DatabaseHelper databaseHelper, long flushIntervalMillis) {
+		this.databaseHelper = databaseHelper;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushNow, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * A question or answer saved through the repository. Its id is 0 until the insert commits.
+	 */
+	public static class Row {
+		private final boolean question;
+		private final Row parent;          // The question an answer belongs to; null for a question
+		private final String author;
+		private final CompletableFuture<Integer> idFuture = new CompletableFuture<>();
+		private volatile int id;
+		private boolean deleted;           // Guarded by the repository
+
+		private Row(boolean question, Row parent, String author, int id) {
+			this.question = question;
+			this.parent = parent;
+			this.author = author;
+			this.id = id;
+			if (id > 0) {
+				idFuture.complete(id);
+			}
+		}
+
+		public boolean isQuestion() { return question; }
+		public String getAuthor() { return author; }
+
+		// The database id, or 0 while the row has not been written yet.
+		public int getId() { return id; }
+
+		// Completes with the database id once the insert commits. Fails with a
+		// CancellationException if the row was deleted before it was written.
+		public CompletableFuture<Integer> id() { return idFuture; }
+	}
+
+	/**
+	 * Returns a Row for a question that is already in the database, so it can be edited or
+	 * deleted through the repository.
+	 */
+	public Row existingQuestion(int id, String author) {
+		return new Row(true, null, author, id);
+	}
+
+	private enum Type { INSERT, UPDATE, DELETE }
+
+	// The merged change waiting for one row.
+	private static class Change {
+		final Row row;
+		Type type;
+		String text;
+		int attempts;
+		int newId;      // Generated key of an insert, kept here until the transaction commits
+
+		Change(Row row, Type type, String text) {
+			this.row = row;
+			this.type = type;
+			this.text = text;
+		}
+	}
+
+
+	// Queues a new question and returns its row at once.
+	public Row submitQuestion(String text, String author) {
+		new Question(0, text, author); // Same checks as everywhere else
+		checkLength(text);
+		Row row = new Row(true, null, author, 0);
+		enqueue(row, Type.INSERT, text);
+		return row;
+	}
+
+	// Queues a new answer to a question row, which may itself still be waiting to be written.
+	public Row submitAnswer(Row question, String text, String author) {
+		if (question == null || !question.isQuestion()) {
+			throw new IllegalArgumentException("An answer needs a question.");
+		}
+		new Answer(0, 1, text, author);
+		checkLength(text);
+		Row row = new Row(false, question, author, 0);
+		enqueue(row, Type.INSERT, text);
+		return row;
+	}
+
+	// Queues a change to a row's text.
+	public void update(Row row, String newText) {
+		if (newText == null || newText.trim().isEmpty()) {
+			throw new IllegalArgumentException("Text cannot be empty.");
+		}
+		checkLength(newText);
+		enqueue(row, Type.UPDATE, newText);
+	}
+
+	// Refuses text the database would reject, before it can hold up a whole batch.
+	private static void checkLength(String text) {
+		if (text.length() > MAX_TEXT_LENGTH) {
+			throw new IllegalArgumentException("Text cannot be longer than " + MAX_TEXT_LENGTH + " characters.");
+		}
+	}
+
+	// Queues a row's deletion. Deleting a question also deletes its answers.
+	public void delete(Row row) {
+		enqueue(row, Type.DELETE, null);
+	}
+
+	private void enqueue(Row row, Type type, String text) {
+		boolean flushEarly;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The repository has been closed.");
+			}
+			if (row.deleted) {
+				throw new IllegalStateException("The row has been deleted.");
+			}
+			if (type == Type.DELETE) {
+				row.deleted = true;
+			}
+			merge(pending, new Change(row, type, text));
+			flushEarly = pending.size() >= MAX_BATCH && !flushRequested;
+			if (flushEarly) {
+				flushRequested = true;
+			}
+		}
+		if (flushEarly) {
+			flusher.execute(this::flushNow);
+		}
+	}
+
+	// Adds a change to a queue, merging it with the change already waiting for the same row.
+	private static void merge(LinkedHashMap<Row, Change> queue, Change change) {
+		Change waiting = queue.get(change.row);
+		if (waiting == null) {
+			queue.put(change.row, change);
+		} else if (change.type == Type.UPDATE) {
+			waiting.text = change.text;              // insert+update is an insert; update+update the last one
+		} else if (change.type == Type.DELETE && waiting.type == Type.INSERT) {
+			queue.remove(change.row);                // Never written, so nothing to delete
+			change.row.idFuture.completeExceptionally(new CancellationException("Deleted before it was saved."));
+		} else {
+			waiting.type = change.type;              // update+delete is a delete
+			waiting.text = change.text;
+		}
+	}
+
+	/**
+	 * Asks for the waiting changes to be written now. The future completes after that flush.
+	 */
+	public CompletableFuture<Void> flush() {
+		return CompletableFuture.runAsync(this::flushNow, flusher);
+	}
+
+	// Writes everything that is waiting. Runs only on the flusher thread.
+	private void flushNow() {
+		LinkedHashMap<Row, Change> batch;
+		synchronized (this) {
+			flushRequested = false;
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<>();
+		}
+
+		List<Change> written;
+		try {
+			written = write(batch);
+		} catch (SQLException | RuntimeException e) {
+			e.printStackTrace();
+			writeOneByOne(batch);
+			return;
+		}
+		publish(written);
+	}
+
+	/**
+	 * Writes a batch that failed as a whole one row at a time. A row whose data the database
+	 * refuses is given up on at once; any other error means the database itself is in trouble, so
+	 * that row and the ones after it are put back to be retried.
+	 */
+	private void writeOneByOne(LinkedHashMap<Row, Change> batch) {
+		LinkedHashMap<Row, Change> retry = new LinkedHashMap<>();
+		Exception error = null;
+		for (Change change : batch.values()) {
+			if (error != null) {
+				retry.put(change.row, change);
+				continue;
+			}
+			LinkedHashMap<Row, Change> single = new LinkedHashMap<>();
+			single.put(change.row, change);
+			List<Change> written;
+			try {
+				written = write(single);
+			} catch (SQLException | RuntimeException e) {
+				if (isRefused(e)) {
+					change.row.idFuture.completeExceptionally(e);
+				} else {
+					error = e;
+					retry.put(change.row, change);
+				}
+				continue;
+			}
+			publish(written);
+		}
+		if (error != null) {
+			requeue(retry, error);
+		}
+	}
+
+	// True for data and constraint errors (SQLState classes 22 and 23), which retrying cannot fix.
+	// A duplicate key (23505) is the exception: another instance sharing the database may have
+	// imported rows with explicit ids and not yet moved the id counter past them.
+	private static boolean isRefused(Exception e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof SQLException) {
+				String state = ((SQLException) t).getSQLState();
+				if (state != null && !state.equals("23505") && (state.startsWith("22") || state.startsWith("23"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Only once a write has committed are the new ids real: publish them, tell other instances, and
+	// keep the search index in step.
+	private void publish(List<Change> written) {
+		for (Change change : written) {
+			Row row = change.row;
+			if (change.type == Type.INSERT) {
+				row.id = change.newId;
+				row.idFuture.complete(row.id);
+			}
+			databaseHelper.publishInvalidation(row.question ? InvalidationBus.Entity.QUESTION
+					: InvalidationBus.Entity.ANSWER, row.id);
+			databaseHelper.updateSearchIndex(index -> indexChange(index, change));
+		}
+	}
+
+	// Applies one written change to the search index.
+	private static void indexChange(SearchIndex index, Change change) {
+		Row row = change.row;
+		if (change.type == Type.DELETE) {
+			if (row.question) {
+				index.removeQuestion(row.id);
+			} else {
+				index.removeAnswer(row.id);
+			}
+		} else if (row.question) {
+			index.update(SearchIndex.Kind.QUESTION, row.id, change.text);
+		} else {
+			index.addAnswer(row.id, row.parent.id, change.text);
+		}
+	}
+
+	// Puts a failed batch back ahead of the changes queued since, or gives up on it.
+	private void requeue(LinkedHashMap<Row, Change> batch, Exception error) {
+		synchronized (this) {
+			LinkedHashMap<Row, Change> queue = new LinkedHashMap<>();
+			for (Change change : batch.values()) {
+				if (++change.attempts < MAX_ATTEMPTS) {
+					queue.put(change.row, change);
+				} else {
+					change.row.idFuture.completeExceptionally(error);
+				}
+			}
+			for (Change change : pending.values()) {
+				merge(queue, change);
+			}
+			pending = queue;
+		}
+	}
+
+	/**
+	 * Writes one batch in a single transaction: question inserts, answer inserts, updates, then
+	 * deletes. Returns the changes that were written; the caller publishes the new ids once the
+	 * transaction has committed.
+	 */
+	private List<Change> write(LinkedHashMap<Row, Change> batch) throws SQLException {
+		List<Change> questionInserts = new ArrayList<>();
+		List<Change> answerInserts = new ArrayList<>();
+		List<Change> others = new ArrayList<>();
+		Set<Row> insertingQuestions = new HashSet<>();
+		for (Change change : batch.values()) {
+			if (change.type != Type.INSERT) {
+				others.add(change);
+			} else if (change.row.question) {
+				questionInserts.add(change);
+				insertingQuestions.add(change.row);
+			}
+		}
+		for (Change change : batch.values()) {
+			if (change.type != Type.INSERT || change.row.question) {
+				continue;
+			}
+			Row parent = change.row.parent;
+			if (parent.id == 0 && !insertingQuestions.contains(parent)) {
+				// Its question was deleted or failed before either was written
+				change.row.idFuture.completeExceptionally(new CancellationException("The question was not saved."));
+			} else {
+				answerInserts.add(change);
+			}
+		}
+
+		// An import with explicit ids must not run between our inserts and its identity restart
+		Lock insertLock = databaseHelper.generatedInsertLock();
+		insertLock.lock();
+		try (Connection connection = databaseHelper.borrowConnection()) {
+			connection.setAutoCommit(false);
+			// Prepare only what this batch needs, so writing one row at a time stays cheap
+			if (!questionInserts.isEmpty()) {
+				try (PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_INSERT_QUESTION,
+						Statement.RETURN_GENERATED_KEYS)) {
+					for (Change change : questionInserts) {
+						pstmt.setString(1, change.text);
+						pstmt.setString(2, change.row.author);
+						pstmt.addBatch();
+					}
+					pstmt.executeBatch();
+					assignKeys(pstmt, questionInserts);
+				}
+			}
+			if (!answerInserts.isEmpty()) {
+				try (PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_INSERT_ANSWER,
+						Statement.RETURN_GENERATED_KEYS)) {
+					for (Change change : answerInserts) {
+						Row parent = change.row.parent;
+						pstmt.setInt(1, parent.id != 0 ? parent.id : batch.get(parent).newId);
+						pstmt.setString(2, change.text);
+						pstmt.setString(3, change.row.author);
+						pstmt.addBatch();
+					}
+					pstmt.executeBatch();
+					assignKeys(pstmt, answerInserts);
+				}
+			}
+			if (!others.isEmpty()) {
+				try (PreparedStatement updateQuestion = connection.prepareStatement(DatabaseHelper.SQL_UPDATE_QUESTION);
+				     PreparedStatement updateAnswer = connection.prepareStatement(DatabaseHelper.SQL_UPDATE_ANSWER);
+				     PreparedStatement deleteQuestion = connection.prepareStatement(DatabaseHelper.SQL_DELETE_QUESTION);
+				     PreparedStatement deleteAnswer = connection.prepareStatement(DatabaseHelper.SQL_DELETE_ANSWER)) {
+					for (Change change : others) {
+						Row row = change.row;
+						if (change.type == Type.UPDATE) {
+							PreparedStatement pstmt = row.question ? updateQuestion : updateAnswer;
+							pstmt.setString(1, change.text);
+							pstmt.setInt(2, row.id);
+							pstmt.addBatch();
+						} else {
+							PreparedStatement pstmt = row.question ? deleteQuestion : deleteAnswer;
+							pstmt.setInt(1, row.id);
+							pstmt.addBatch();
+						}
+					}
+					updateQuestion.executeBatch();
+					updateAnswer.executeBatch();
+					deleteAnswer.executeBatch();
+					deleteQuestion.executeBatch();
+				}
+			}
+			connection.commit();
+		} finally {
+			insertLock.unlock();
+		}
+		List<Change> written = new ArrayList<>();
+		written.addAll(questionInserts);
+		written.addAll(answerInserts);
+		written.addAll(others);
+		return written;
+	}
+
+	// Gives each inserted row its generated key, in batch order.
+	private static void assignKeys(PreparedStatement pstmt, List<Change> inserts) throws SQLException {
+		try (ResultSet keys = pstmt.getGeneratedKeys()) {
+			for (Change change : inserts) {
+				if (!keys.next()) {
+					throw new SQLException("Missing generated key for a batched insert.");
+				}
+				change.newId = keys.getInt(1);
+			}
+		}
+	}
+
+	// Number of rows with changes waiting to be written.
+	public synchronized int pendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Writes what is waiting and stops the background thread. Further changes are refused.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		flusher.execute(this::flushNow);
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package application;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The UserNameRecognizerBenchmark class compares the table-driven UserNameRecognizer with the
+ * version 1.01 recognizer it replaced, kept as LegacyUserNameRecognizer, on valid UserNames and on
+ * each kind of error.
+ *
+ * The old recognizer prints its trace for every character. Standard output is sent nowhere while
+ * the benchmarks run, so the printing is timed but the console is not flooded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserNameRecognizerBenchmark {
+
+	// Valid; valid at the longest length; too long; invalid character; bad start; ends after a special character
+	@Param({"Student_01", "abcdefghijklmnop", "abcdefghijklmnopq", "john doe", "1student", "john."})
+	public String userName;
+
+	private PrintStream standardOut;
+
+	@Setup(Level.Trial)
+	public void silenceTrace() {
+		standardOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown(Level.Trial)
+	public void restoreTrace() {
+		System.setOut(standardOut);
+	}
+
+	@Benchmark
+	public String legacy() {
+		return LegacyUserNameRecognizer.checkForValidUserName(userName);
+	}
+
+	@Benchmark
+	public UserNameRecognizer.Result tableDriven() {
+		return UserNameRecognizer.check(userName);
+	}
+
+	// The version 1.01 API on top of the table, as the account pages call it
+	@Benchmark
+	public String tableDrivenCompatible() {
+		return UserNameRecognizer.checkForValidUserName(userName);
+	}
+}
@@ -0,0 +1,134 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import application.Question;
+
+
+/**
+ * The BenchmarkDatabase class is the database the benchmarks run against: a DatabaseHelper
+ * connected with one storage profile and filled with a given number of users and questions.
+ *
+ * Every seeded user is a student with the password PASSWORD. Questions are spread over the first
+ * tenth of the users, so getQuestionsByUser returns about ten rows whatever the table size.
+ *
+ * File-backed databases are kept under -Dbench.dir (default target/bench-db), one per row count,
+ * and reused by later runs when they still hold the right number of rows, since seeding a
+ * million rows takes far longer than the benchmarks themselves. In-memory databases are seeded
+ * in every fork.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+	static final String PASSWORD = "Bench1!pass";
+	static final String ROLE = "student";
+	static final int SEED_BATCH = 10_000;     // Rows per transaction while seeding
+	static final int QUESTIONS_PER_AUTHOR = 10;
+
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+
+	@Param({"IN_MEMORY", "EMBEDDED"})
+	public String storage;
+
+	DatabaseHelper db;
+	private int firstQuestionId;
+
+	@Setup(Level.Trial)
+	public void open() throws Exception {
+		System.setProperty(StorageProfile.PATH_PROPERTY, System.getProperty("bench.dir", "target/bench-db")
+				+ "/rows-" + rows);
+		db = new DatabaseHelper();
+		db.setStorageProfile(StorageProfile.named(storage));
+		db.connectToDatabase();
+		if (count(DatabaseHelper.SQL_COUNT_USERS) != rows || count(DatabaseHelper.SQL_COUNT_QUESTIONS) != rows) {
+			seed();
+		}
+		firstQuestionId = count(DatabaseHelper.SQL_MAX_QUESTION_ID) - rows + 1;
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		db.closeConnection();
+	}
+
+	// A random seeded user, so lookups are spread over the whole table rather than one cached row.
+	String randomUser() {
+		return "user" + ThreadLocalRandom.current().nextInt(rows);
+	}
+
+	// A random user who has asked questions.
+	String randomAuthor() {
+		return "user" + ThreadLocalRandom.current().nextInt(authors());
+	}
+
+	int randomQuestionId() {
+		return firstQuestionId + ThreadLocalRandom.current().nextInt(rows);
+	}
+
+	private int authors() {
+		return Math.max(1, rows / QUESTIONS_PER_AUTHOR);
+	}
+
+	// Replaces whatever the database holds with rows users and rows questions.
+	private void seed() throws Exception {
+		System.out.println("Seeding " + rows + " users and questions (" + storage + ")...");
+		try (Connection connection = db.borrowConnection();
+		     Statement statement = connection.createStatement()) {
+			statement.execute("DELETE FROM questions");  // Answers go with them
+			statement.execute("DELETE FROM cse360users");
+		}
+
+		// Every user has the same password, so it is hashed once
+		String hash = db.passwordHasher().hash(PASSWORD).get();
+		try (Connection connection = db.borrowConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement pstmt = connection.prepareStatement(DatabaseHelper.SQL_INSERT_USER)) {
+				for (int i = 0; i < rows; i++) {
+					pstmt.setString(1, "user" + i);
+					pstmt.setString(2, hash);
+					pstmt.setString(3, ROLE);
+					pstmt.addBatch();
+					if ((i + 1) % SEED_BATCH == 0 || i == rows - 1) {
+						pstmt.executeBatch();
+						connection.commit();
+					}
+				}
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+
+		List<Question> batch = new ArrayList<>(SEED_BATCH);
+		for (int i = 0; i < rows; i++) {
+			batch.add(new Question(0, "Question " + i + ": how does topic " + (i % 97) + " relate to topic "
+					+ (i % 89) + "?", "user" + (i % authors())));
+			if (batch.size() == SEED_BATCH || i == rows - 1) {
+				db.insertBatch(batch, new ArrayList<>());
+				batch.clear();
+			}
+		}
+	}
+
+	private int count(String query) throws SQLException {
+		try (Connection connection = db.borrowConnection();
+		     PreparedStatement pstmt = connection.prepareStatement(query);
+		     ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package databasePart1;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * The BenchmarkMain class runs the benchmarks like JMH's own main, taking the same options, but
+ * saves the results as JSON by default, to benchmark-results/<date>-<time>.json. Keeping those
+ * files between releases shows when a change made a call slower; the JSON can be compared with
+ * any JMH result viewer. -rf and -rff still choose another format or file.
+ */
+public class BenchmarkMain {
+
+	static final String RESULTS_DIR = "benchmark-results";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (!cmd.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmd.getResult().hasValue()) {
+			new File(RESULTS_DIR).mkdirs();
+			options.result(RESULTS_DIR + "/" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+		}
+		Runner runner = new Runner(options.build());
+		if (cmd.shouldList()) {
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
@@ -0,0 +1,78 @@
+package databasePart1;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.Question;
+import application.User;
+
+
+/**
+ * The DatabaseHelperBenchmark class times the DatabaseHelper calls the pages make most often,
+ * against each storage profile and table size in BenchmarkDatabase.
+ *
+ * login includes checking the password hash, which is most of its cost by design. To time only
+ * the database side, run with -jvmArgsAppend -Dcse360.passwordIterations=1000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseHelperBenchmark {
+
+	@Benchmark
+	public boolean login(BenchmarkDatabase database) throws SQLException {
+		return database.db.login(new User(database.randomUser(), BenchmarkDatabase.PASSWORD, BenchmarkDatabase.ROLE));
+	}
+
+	@Benchmark
+	public boolean doesUserExist(BenchmarkDatabase database) {
+		return database.db.doesUserExist(database.randomUser());
+	}
+
+	@Benchmark
+	public String getUserRole(BenchmarkDatabase database) {
+		return database.db.getUserRole(database.randomUser());
+	}
+
+	@Benchmark
+	public List<Question> getAllQuestions(BenchmarkDatabase database) throws SQLException {
+		return database.db.getAllQuestions();
+	}
+
+	@Benchmark
+	public List<Question> getQuestionsByUser(BenchmarkDatabase database) throws SQLException {
+		return database.db.getQuestionsByUser(database.randomAuthor());
+	}
+
+	@Benchmark
+	public void updateQuestion(BenchmarkDatabase database) throws SQLException {
+		int id = database.randomQuestionId();
+		database.db.updateQuestion(id, "Question " + id + ", edited at " + System.nanoTime());
+	}
+
+	// Issues an OTP and uses it, as a password reset does. Goes to the OtpStore directly, because
+	// DatabaseHelper.generateOTP also prints every OTP it issues.
+	@Benchmark
+	public boolean generateAndValidateOTP(BenchmarkDatabase database) {
+		String userName = database.randomUser();
+		OtpStore otps = database.db.otpStore();
+		String otp = otps.issue(userName);
+		return otps.consume(userName, otp);
+	}
+
+	@Benchmark
+	public String generateInvitationCode(BenchmarkDatabase database) {
+		return database.db.generateInvitationCode();
+	}
+}